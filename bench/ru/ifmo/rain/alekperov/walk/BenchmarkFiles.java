@@ -0,0 +1,70 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Synthetic files and trees for the benchmarks. Contents depend only on the seed, so runs are reproducible.
+ */
+class BenchmarkFiles {
+
+    static final long SEED = 8682522807148012L;
+
+    private BenchmarkFiles() {
+    }
+
+    static byte[] randomBytes(final Random random, final int size) {
+        final var bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    static Path createFile(final Path dir, final String name, final long size, final Random random) throws IOException {
+        final var file = dir.resolve(name);
+        try (final var os = Files.newOutputStream(file)) {
+            final var chunk = randomBytes(random, 1 << 16);
+            for (long left = size; left > 0; left -= chunk.length) {
+                os.write(chunk, 0, (int) Math.min(left, chunk.length));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Creates a tree in which every directory has the given number of subdirectories and files.
+     */
+    static void createTree(final Path dir, final int depth, final int dirs, final int files, final int fileSize,
+                           final Random random) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < files; ++i) {
+            createFile(dir, "f" + i, fileSize, random);
+        }
+        if (depth > 0) {
+            for (int i = 0; i < dirs; ++i) {
+                createTree(dir.resolve("d" + i), depth - 1, dirs, files, fileSize, random);
+            }
+        }
+    }
+
+    static void delete(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,70 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing throughput of the standard hash functions.
+ * {@link #memory} feeds an in-memory array through buffers of the given size,
+ * {@link #file} hashes a file of the given size the way the walker does (the file stays in the page cache),
+ * reading it into a heap buffer of the given size; files of a megabyte and more are memory-mapped instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashingBenchmark {
+
+    @Param({"fnv32", "fnv1a64", "crc32c", "xxh64"})
+    public String hash;
+
+    @Param({"1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    @Param({"1024", "65536"})
+    public int bufferSize;
+
+    private HashFunction function;
+    private byte[] data;
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        function = HashFunction.forName(hash);
+        final var random = new Random(BenchmarkFiles.SEED);
+        data = BenchmarkFiles.randomBytes(random, size);
+        dir = Files.createTempDirectory("hashing-benchmark");
+        file = BenchmarkFiles.createFile(dir, "data", size, random);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public long memory() {
+        final var checksum = function.newChecksum();
+        for (int i = 0; i < data.length; i += bufferSize) {
+            checksum.update(data, i, Math.min(bufferSize, data.length - i));
+        }
+        return checksum.getValue();
+    }
+
+    @Benchmark
+    public long file() throws IOException {
+        try (final var channel = FileChannel.open(file)) {
+            return Hashing.hash(channel, function.newChecksum(), bufferSize);
+        }
+    }
+
+}
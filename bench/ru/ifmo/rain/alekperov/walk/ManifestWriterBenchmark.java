@@ -0,0 +1,67 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing manifest entries: {@link ManifestWriter} against the original
+ * {@code String.format} and {@code BufferedWriter} pair. Run with {@code -prof gc} to see allocations per entry.
+ * Both write to {@value #SINK}, so the disk is not involved.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManifestWriterBenchmark {
+
+    private static final int PATHS = 1024;
+    private static final String SINK = "/dev/null";
+
+    private final String[] paths = new String[PATHS];
+    private final long[] hashes = new long[PATHS];
+    private ManifestWriter manifestWriter;
+    private BufferedWriter bufferedWriter;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        final var random = new Random(BenchmarkFiles.SEED);
+        for (int i = 0; i < PATHS; ++i) {
+            paths[i] = "/home/user/projects/walk/src/main/java/package" + random.nextInt(100) + "/File" + i + ".java";
+            hashes[i] = random.nextInt() & 0xffffffffL;
+        }
+        manifestWriter = new ManifestWriter(Paths.get(SINK), 32);
+        bufferedWriter = Files.newBufferedWriter(Paths.get(SINK), StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        manifestWriter.close();
+        bufferedWriter.close();
+    }
+
+    @Benchmark
+    public void manifestWriter() throws IOException {
+        final int i = next++ & (PATHS - 1);
+        manifestWriter.write(hashes[i], paths[i]);
+    }
+
+    @Benchmark
+    public void bufferedWriter() throws IOException {
+        final int i = next++ & (PATHS - 1);
+        bufferedWriter.write(String.format("%08x", hashes[i]));
+        bufferedWriter.write(' ');
+        bufferedWriter.write(paths[i]);
+        bufferedWriter.newLine();
+    }
+
+}
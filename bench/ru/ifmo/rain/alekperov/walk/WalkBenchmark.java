@@ -0,0 +1,67 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole {@link RecursiveWalk} runs over synthetic trees:
+ * {@code deep} is a narrow tree of depth 12, {@code wide} has a few directories with thousands of files each,
+ * and {@code tiny} consists of many directories of small files.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalkBenchmark {
+
+    @Param({"deep", "wide", "tiny"})
+    public String shape;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path dir;
+    private Path input;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("walk-benchmark");
+        final var root = dir.resolve("root");
+        final var random = new Random(BenchmarkFiles.SEED);
+        switch (shape) {
+            case "deep":
+                BenchmarkFiles.createTree(root, 12, 2, 1, 4096, random);
+                break;
+            case "wide":
+                BenchmarkFiles.createTree(root, 1, 4, 2000, 4096, random);
+                break;
+            case "tiny":
+                BenchmarkFiles.createTree(root, 3, 10, 10, 64, random);
+                break;
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+        input = Files.write(dir.resolve("input.txt"), List.of(root.toString()));
+        output = dir.resolve("output.txt");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public void walk() {
+        RecursiveWalk.main(new String[]{"--threads", Integer.toString(threads), input.toString(), output.toString()});
+    }
+
+}
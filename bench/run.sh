@@ -0,0 +1,29 @@
+#!/bin/sh
+# Builds the benchmarks together with the sources they measure and runs them.
+# The arguments are passed to JMH, for example: bench/run.sh HashingBenchmark -p hash=xxh64 -p size=65536
+# The JMH jars are downloaded from Maven Central into bench/lib on the first run.
+set -e
+cd "$(dirname "$0")/.."
+
+JMH_VERSION=${JMH_VERSION:-1.37}
+REPOSITORY=https://repo1.maven.org/maven2
+LIB=bench/lib
+OUT=bench/out
+
+mkdir -p "$LIB"
+for artifact in \
+        "org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar" \
+        "org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar" \
+        "net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar" \
+        "org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"; do
+    jar="$LIB/${artifact##*/}"
+    [ -f "$jar" ] || curl -fsSL -o "$jar" "$REPOSITORY/$artifact"
+done
+CLASSPATH=$(find "$LIB" -name '*.jar' | tr '\n' ':')
+
+rm -rf "$OUT"
+javac -d "$OUT" -cp "$CLASSPATH" -processorpath "$CLASSPATH" \
+    src/ru/ifmo/rain/alekperov/walk/*.java bench/ru/ifmo/rain/alekperov/walk/*.java
+
+[ $# -gt 0 ] || set -- ru.ifmo.rain.alekperov.walk
+exec java -cp "$OUT:$CLASSPATH" org.openjdk.jmh.Main "$@"
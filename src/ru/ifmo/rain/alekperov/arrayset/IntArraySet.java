@@ -0,0 +1,278 @@
+package ru.ifmo.rain.alekperov.arrayset;
+
+import java.util.*;
+
+/**
+ * An immutable {@link NavigableSet} of {@code int}s backed by a sorted array, with primitive lookups
+ * which throw {@link NoSuchElementException} where the boxed ones return {@code null}.
+ *
+ * <p>{@link LongArraySet} repeats this code for {@code long}s on purpose: sharing the index logic would need
+ * either boxing or a virtual access to the array on every probe of the binary search, which is the cost
+ * these sets exist to avoid. The two classes should be changed together.
+ */
+public class IntArraySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+    private final int[] storage;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+
+    public IntArraySet() {
+        this(new int[0], false);
+    }
+
+    public IntArraySet(final int... elements) {
+        this(sortUnique(elements.clone()), false);
+    }
+
+    public IntArraySet(final Collection<Integer> collection) {
+        this(sortUnique(collection.stream().mapToInt(Integer::intValue).toArray()), false);
+    }
+
+    private IntArraySet(final int[] storage, final boolean descending) {
+        this(storage, 0, storage.length, descending);
+    }
+
+    private IntArraySet(final int[] storage, final int from, final int to, final boolean descending) {
+        this.storage = storage;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    private static int[] sortUnique(final int[] elements) {
+        Arrays.sort(elements);
+        int size = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (size == 0 || elements[size - 1] != elements[i]) {
+                elements[size++] = elements[i];
+            }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
+    }
+
+    private int ceilingIndex(final int e) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (storage[mid] < e) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int higherIndex(final int e) {
+        final int result = ceilingIndex(e);
+        return (result < to && storage[result] == e) ? (result + 1) : result;
+    }
+
+    private int floorIndex(final int e) {
+        return higherIndex(e) - 1;
+    }
+
+    private int lowerIndex(final int e) {
+        return ceilingIndex(e) - 1;
+    }
+
+    private boolean isIndexInRange(final int index) {
+        return index >= from && index < to;
+    }
+
+    private int getOrThrow(final int index) {
+        if (!isIndexInRange(index)) {
+            throw new NoSuchElementException();
+        }
+        return storage[index];
+    }
+
+    private Integer getOrNull(final int index) {
+        return isIndexInRange(index) ? storage[index] : null;
+    }
+
+    public boolean contains(final int e) {
+        final int index = ceilingIndex(e);
+        return index < to && storage[index] == e;
+    }
+
+    public int lowerInt(final int e) {
+        return getOrThrow(descending ? higherIndex(e) : lowerIndex(e));
+    }
+
+    public int floorInt(final int e) {
+        return getOrThrow(descending ? ceilingIndex(e) : floorIndex(e));
+    }
+
+    public int ceilingInt(final int e) {
+        return getOrThrow(descending ? floorIndex(e) : ceilingIndex(e));
+    }
+
+    public int higherInt(final int e) {
+        return getOrThrow(descending ? lowerIndex(e) : higherIndex(e));
+    }
+
+    public int firstInt() {
+        return getOrThrow(descending ? to - 1 : from);
+    }
+
+    public int lastInt() {
+        return getOrThrow(descending ? from : to - 1);
+    }
+
+    public int[] toIntArray() {
+        final int[] result = Arrays.copyOfRange(storage, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                final int t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Integer lower(final Integer e) {
+        return getOrNull(descending ? higherIndex(e) : lowerIndex(e));
+    }
+
+    @Override
+    public Integer floor(final Integer e) {
+        return getOrNull(descending ? ceilingIndex(e) : floorIndex(e));
+    }
+
+    @Override
+    public Integer ceiling(final Integer e) {
+        return getOrNull(descending ? floorIndex(e) : ceilingIndex(e));
+    }
+
+    @Override
+    public Integer higher(final Integer e) {
+        return getOrNull(descending ? lowerIndex(e) : higherIndex(e));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof Integer && contains((int) (Integer) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index = descending ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() {
+                return isIndexInRange(index);
+            }
+
+            @Override
+            public int nextInt() {
+                final int result = getOrThrow(index);
+                index += descending ? -1 : 1;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public IntArraySet descendingSet() {
+        return new IntArraySet(storage, from, to, !descending);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private IntArraySet getSubSet(final boolean fromStart, final int lo, final boolean loInclusive,
+                                  final boolean toEnd, final int hi, final boolean hiInclusive) {
+        if (!fromStart && !toEnd && lo > hi) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        final int start = fromStart ? from : (loInclusive ? ceilingIndex(lo) : higherIndex(lo));
+        final int end = toEnd ? to : (hiInclusive ? higherIndex(hi) : ceilingIndex(hi));
+        return new IntArraySet(storage, start, Math.max(start, end), descending);
+    }
+
+    private IntArraySet getViewSubSet(final boolean fromStart, final int fromElement, final boolean fromInclusive,
+                                      final boolean toEnd, final int toElement, final boolean toInclusive) {
+        return descending
+                ? getSubSet(toEnd, toElement, toInclusive, fromStart, fromElement, fromInclusive)
+                : getSubSet(fromStart, fromElement, fromInclusive, toEnd, toElement, toInclusive);
+    }
+
+    @Override
+    public IntArraySet subSet(final Integer fromElement, final boolean fromInclusive,
+                              final Integer toElement, final boolean toInclusive) {
+        return getViewSubSet(false, fromElement, fromInclusive, false, toElement, toInclusive);
+    }
+
+    @Override
+    public IntArraySet subSet(final Integer fromElement, final Integer toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public IntArraySet headSet(final Integer toElement, final boolean inclusive) {
+        return getViewSubSet(true, 0, false, false, toElement, inclusive);
+    }
+
+    @Override
+    public IntArraySet headSet(final Integer toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public IntArraySet tailSet(final Integer fromElement, final boolean inclusive) {
+        return getViewSubSet(false, fromElement, inclusive, true, 0, true);
+    }
+
+    @Override
+    public IntArraySet tailSet(final Integer fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    @Override
+    public Integer pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            result += storage[i];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,274 @@
+package ru.ifmo.rain.alekperov.arrayset;
+
+import java.util.*;
+
+/**
+ * The {@code long} counterpart of {@link IntArraySet}, duplicated from it rather than sharing its index logic;
+ * see there for why.
+ */
+public class LongArraySet extends AbstractSet<Long> implements NavigableSet<Long> {
+
+    private final long[] storage;
+    private final int from;
+    private final int to;
+    private final boolean descending;
+
+    public LongArraySet() {
+        this(new long[0], false);
+    }
+
+    public LongArraySet(final long... elements) {
+        this(sortUnique(elements.clone()), false);
+    }
+
+    public LongArraySet(final Collection<Long> collection) {
+        this(sortUnique(collection.stream().mapToLong(Long::longValue).toArray()), false);
+    }
+
+    private LongArraySet(final long[] storage, final boolean descending) {
+        this(storage, 0, storage.length, descending);
+    }
+
+    private LongArraySet(final long[] storage, final int from, final int to, final boolean descending) {
+        this.storage = storage;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    private static long[] sortUnique(final long[] elements) {
+        Arrays.sort(elements);
+        int size = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (size == 0 || elements[size - 1] != elements[i]) {
+                elements[size++] = elements[i];
+            }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
+    }
+
+    private int ceilingIndex(final long e) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (storage[mid] < e) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int higherIndex(final long e) {
+        final int result = ceilingIndex(e);
+        return (result < to && storage[result] == e) ? (result + 1) : result;
+    }
+
+    private int floorIndex(final long e) {
+        return higherIndex(e) - 1;
+    }
+
+    private int lowerIndex(final long e) {
+        return ceilingIndex(e) - 1;
+    }
+
+    private boolean isIndexInRange(final int index) {
+        return index >= from && index < to;
+    }
+
+    private long getOrThrow(final int index) {
+        if (!isIndexInRange(index)) {
+            throw new NoSuchElementException();
+        }
+        return storage[index];
+    }
+
+    private Long getOrNull(final int index) {
+        return isIndexInRange(index) ? storage[index] : null;
+    }
+
+    public boolean contains(final long e) {
+        final int index = ceilingIndex(e);
+        return index < to && storage[index] == e;
+    }
+
+    public long lowerLong(final long e) {
+        return getOrThrow(descending ? higherIndex(e) : lowerIndex(e));
+    }
+
+    public long floorLong(final long e) {
+        return getOrThrow(descending ? ceilingIndex(e) : floorIndex(e));
+    }
+
+    public long ceilingLong(final long e) {
+        return getOrThrow(descending ? floorIndex(e) : ceilingIndex(e));
+    }
+
+    public long higherLong(final long e) {
+        return getOrThrow(descending ? lowerIndex(e) : higherIndex(e));
+    }
+
+    public long firstLong() {
+        return getOrThrow(descending ? to - 1 : from);
+    }
+
+    public long lastLong() {
+        return getOrThrow(descending ? from : to - 1);
+    }
+
+    public long[] toLongArray() {
+        final long[] result = Arrays.copyOfRange(storage, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                final long t = result[i];
+                result[i] = result[j];
+                result[j] = t;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Long lower(final Long e) {
+        return getOrNull(descending ? higherIndex(e) : lowerIndex(e));
+    }
+
+    @Override
+    public Long floor(final Long e) {
+        return getOrNull(descending ? ceilingIndex(e) : floorIndex(e));
+    }
+
+    @Override
+    public Long ceiling(final Long e) {
+        return getOrNull(descending ? floorIndex(e) : ceilingIndex(e));
+    }
+
+    @Override
+    public Long higher(final Long e) {
+        return getOrNull(descending ? lowerIndex(e) : higherIndex(e));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof Long && contains((long) (Long) o);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index = descending ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() {
+                return isIndexInRange(index);
+            }
+
+            @Override
+            public long nextLong() {
+                final long result = getOrThrow(index);
+                index += descending ? -1 : 1;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public LongArraySet descendingSet() {
+        return new LongArraySet(storage, from, to, !descending);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    private LongArraySet getSubSet(final boolean fromStart, final long lo, final boolean loInclusive,
+                                  final boolean toEnd, final long hi, final boolean hiInclusive) {
+        if (!fromStart && !toEnd && lo > hi) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        final int start = fromStart ? from : (loInclusive ? ceilingIndex(lo) : higherIndex(lo));
+        final int end = toEnd ? to : (hiInclusive ? higherIndex(hi) : ceilingIndex(hi));
+        return new LongArraySet(storage, start, Math.max(start, end), descending);
+    }
+
+    private LongArraySet getViewSubSet(final boolean fromStart, final long fromElement, final boolean fromInclusive,
+                                      final boolean toEnd, final long toElement, final boolean toInclusive) {
+        return descending
+                ? getSubSet(toEnd, toElement, toInclusive, fromStart, fromElement, fromInclusive)
+                : getSubSet(fromStart, fromElement, fromInclusive, toEnd, toElement, toInclusive);
+    }
+
+    @Override
+    public LongArraySet subSet(final Long fromElement, final boolean fromInclusive,
+                              final Long toElement, final boolean toInclusive) {
+        return getViewSubSet(false, fromElement, fromInclusive, false, toElement, toInclusive);
+    }
+
+    @Override
+    public LongArraySet subSet(final Long fromElement, final Long toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public LongArraySet headSet(final Long toElement, final boolean inclusive) {
+        return getViewSubSet(true, 0, false, false, toElement, inclusive);
+    }
+
+    @Override
+    public LongArraySet headSet(final Long toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public LongArraySet tailSet(final Long fromElement, final boolean inclusive) {
+        return getViewSubSet(false, fromElement, inclusive, true, 0, true);
+    }
+
+    @Override
+    public LongArraySet tailSet(final Long fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public Long pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Long pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            result += Long.hashCode(storage[i]);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,250 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Hashes the entries of every ZIP or JAR archive together with the archive itself, in the same task,
+ * so archives are expanded concurrently by the walkers which hash files concurrently.
+ * Archives are streamed, so nothing is extracted to disk, and nested archives are expanded
+ * in the same pass that hashes them, up to {@value #MAX_DEPTH} levels deep.
+ * Entry names are decoded as UTF-8, falling back to the legacy ZIP encoding, IBM437, for archives
+ * whose names are not valid UTF-8. The entry hashes are kept until the archive is written by {@link ArchiveWriter}.
+ *
+ * <p>The hasher has two layers. The {@link #reading reading} one replaces the reader of the files for archives
+ * and hashes the whole archive from the same stream that its entries are read from, so an archive is read once,
+ * though not with {@code --direct} or {@code --readahead}; only the rare archives with legacy names are read again.
+ * With {@code --chunks}, the layer is left out, so archives are chunked, and their entries are read separately.
+ * The {@link #hashing hashing} one tops the chain and reads the entries of the archives whose hashes have been
+ * found without reading them, in the cache or by another hard link.
+ */
+class ArchiveHasher {
+
+    private static final List<String> EXTENSIONS = List.of(".zip", ".jar", ".war", ".ear");
+    private static final int MAX_DEPTH = 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Charset FALLBACK_CHARSET = Charset.isSupported("IBM437")
+            ? Charset.forName("IBM437") : StandardCharsets.ISO_8859_1;
+
+    /**
+     * The hash of an archive entry.
+     */
+    static final class Entry {
+        private final long hash;
+        private final String file;
+
+        Entry(final long hash, final String file) {
+            this.hash = hash;
+            this.file = file;
+        }
+
+        long getHash() {
+            return hash;
+        }
+
+        String getFile() {
+            return file;
+        }
+    }
+
+    private final HashFunction function;
+    private final Map<String, List<Entry>> pending = new ConcurrentHashMap<>();
+
+    ArchiveHasher(final HashFunction function) {
+        this.function = function;
+    }
+
+    static boolean isArchive(final String name) {
+        final var lowerCase = name.toLowerCase(Locale.ROOT);
+        return EXTENSIONS.stream().anyMatch(lowerCase::endsWith);
+    }
+
+    /**
+     * Keeps the enclosing archive open when a nested one is closed.
+     */
+    private static InputStream unclosable(final InputStream is) {
+        return new FilterInputStream(is) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private void collect(final ZipInputStream zis, final String archive, final int depth, final Charset charset,
+                         final List<Entry> entries) throws IOException {
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            final var name = archive + "!/" + entry.getName();
+            final var checksum = function.newChecksum();
+            if (depth < MAX_DEPTH && isArchive(entry.getName())) {
+                final var checked = new CheckedInputStream(unclosable(zis), checksum);
+                final List<Entry> nested = new ArrayList<>();
+                try {
+                    collect(new ZipInputStream(checked, charset), name, depth + 1, charset, nested);
+                } catch (final ZipException | IllegalArgumentException ex) {
+                    RecursiveWalk.showReadError(name, ex);
+                }
+                checked.transferTo(OutputStream.nullOutputStream());
+                entries.add(new Entry(checksum.getValue(), name));
+                entries.addAll(nested);
+            } else {
+                entries.add(new Entry(Hashing.hash(zis, checksum), name));
+            }
+        }
+    }
+
+    /**
+     * Reports the errors of reading the file itself as unchecked,
+     * to tell them from the format errors which {@link ZipInputStream} throws as {@link IOException}.
+     */
+    private static InputStream unchecked(final InputStream is) {
+        return new FilterInputStream(is) {
+            @Override
+            public int read() {
+                try {
+                    return super.read();
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                try {
+                    return super.read(b, off, len);
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public long skip(final long n) {
+                try {
+                    return super.skip(n);
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+    }
+
+    private void collect(final Path file, final Charset charset, final List<Entry> entries) throws IOException {
+        try (final var is = Files.newInputStream(file)) {
+            collect(new ZipInputStream(new BufferedInputStream(is, BUFFER_SIZE), charset), file.toString(), 1,
+                    charset, entries);
+        }
+    }
+
+    /**
+     * Reads the entries of an archive, keeping the ones read before an error.
+     *
+     * @param legacy whether the names are known not to be valid UTF-8.
+     */
+    private List<Entry> collect(final Path file, final boolean legacy) {
+        final List<Entry> entries = new ArrayList<>();
+        try {
+            if (!legacy) {
+                try {
+                    collect(file, StandardCharsets.UTF_8, entries);
+                    return entries;
+                } catch (final IllegalArgumentException ex) {
+                    // Thrown on entry names which are not valid UTF-8
+                    entries.clear();
+                }
+            }
+            collect(file, FALLBACK_CHARSET, entries);
+        } catch (final IOException | IllegalArgumentException ex) {
+            RecursiveWalk.showReadError(file.toString(), ex);
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the entries of an archive and hashes the whole archive in one pass.
+     */
+    private long read(final Path file) throws IOException {
+        final var whole = function.newChecksum();
+        List<Entry> entries = new ArrayList<>();
+        boolean legacy = false;
+        try (final var is = new BufferedInputStream(
+                new CheckedInputStream(unchecked(Files.newInputStream(file)), whole), BUFFER_SIZE)) {
+            try {
+                collect(new ZipInputStream(is, StandardCharsets.UTF_8), file.toString(), 1,
+                        StandardCharsets.UTF_8, entries);
+            } catch (final IllegalArgumentException ex) {
+                // Thrown on entry names which are not valid UTF-8
+                legacy = true;
+            } catch (final IOException ex) {
+                // The entries read before the error are kept
+                RecursiveWalk.showReadError(file.toString(), ex);
+            }
+            is.transferTo(OutputStream.nullOutputStream());
+        } catch (final UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        if (legacy) {
+            entries = collect(file, true);
+        }
+        pending.put(file.toString(), entries);
+        return whole.getValue();
+    }
+
+    /**
+     * Returns the hasher which reads archives itself and leaves the other files to the given reader.
+     *
+     * @param reader the hasher which reads the files.
+     * @return the hasher to put right above the reader, below the cache and the hard link tracking.
+     */
+    FileHasher reading(final FileHasher reader) {
+        return (file, attrs) -> isArchive(file.toString()) ? read(file) : reader.hash(file, attrs);
+    }
+
+    /**
+     * Returns the hasher which makes sure the entries of every hashed archive are read.
+     *
+     * @param hasher the hasher of the files, containing the {@link #reading reading} layer.
+     * @return the hasher to put on top of the chain.
+     */
+    FileHasher hashing(final FileHasher hasher) {
+        return (file, attrs) -> {
+            final long hash = hasher.hash(file, attrs);
+            final var name = file.toString();
+            if (isArchive(name) && !pending.containsKey(name)) {
+                // The hash has been found without reading the archive
+                pending.put(name, collect(file, false));
+            }
+            return hash;
+        };
+    }
+
+    /**
+     * Removes and returns the entries of a hashed archive.
+     *
+     * @param file the path of the archive, as written to the manifest.
+     * @return the entries in the archive order, or {@code null} if the file is not a successfully hashed archive.
+     */
+    List<Entry> take(final String file) {
+        return pending.remove(file);
+    }
+
+}
@@ -0,0 +1,41 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+
+/**
+ * Follows the hash of every ZIP or JAR archive with the hashes of its entries, named {@code archive!/entry},
+ * as computed by {@link ArchiveHasher}.
+ */
+class ArchiveWriter implements HashWriter {
+
+    private final HashWriter writer;
+    private final ArchiveHasher hasher;
+
+    ArchiveWriter(final HashWriter writer, final ArchiveHasher hasher) {
+        this.writer = writer;
+        this.hasher = hasher;
+    }
+
+    @Override
+    public void write(final long hash, final String file) throws IOException {
+        writer.write(hash, file);
+        final var entries = hasher.take(file);
+        if (entries == null) {
+            return;
+        }
+        for (final var entry : entries) {
+            writer.write(entry.getHash(), entry.getFile());
+        }
+    }
+
+    @Override
+    public void enterDirectory(final String dir) throws IOException {
+        writer.enterDirectory(dir);
+    }
+
+    @Override
+    public void exitDirectory(final String dir) throws IOException {
+        writer.exitDirectory(dir);
+    }
+
+}
@@ -0,0 +1,221 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads manifests written by {@link BinaryManifestWriter}. Blocks are decoded on demand from memory-mapped
+ * windows of the file, so a single entry can be looked up without reading the whole manifest.
+ */
+class BinaryManifestReader implements ManifestReader {
+
+    private static final long MAP_WINDOW_SIZE = 1 << 26;
+
+    private final FileChannel channel;
+    private final int digits;
+    private final int hashBytes;
+    private final int blockRecords;
+    private final long indexOffset;
+    private final long records;
+    private final long[] index;
+    private final boolean sorted;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private List<Entry> current = List.of();
+    private int nextBlock;
+    private int nextRecord;
+
+    /**
+     * Opens the manifest and reads its header, footer and block index.
+     *
+     * @param file the manifest file.
+     * @throws IOException if the file cannot be read or is not a binary manifest.
+     */
+    BinaryManifestReader(final Path file) throws IOException {
+        channel = FileChannel.open(file);
+        try {
+            final long size = channel.size();
+            if (size < BinaryManifestWriter.HEADER_SIZE + BinaryManifestWriter.FOOTER_SIZE) {
+                throw new IOException("Not a binary manifest");
+            }
+            final var header = read(0, BinaryManifestWriter.HEADER_SIZE);
+            if (header.getInt() != BinaryManifestWriter.MAGIC) {
+                throw new IOException("Not a binary manifest");
+            }
+            if (header.getInt() != BinaryManifestWriter.VERSION) {
+                throw new IOException("Unsupported binary manifest version");
+            }
+            digits = header.getInt();
+            hashBytes = (digits + 1) / 2;
+            blockRecords = header.getInt();
+            final var footer = read(size - BinaryManifestWriter.FOOTER_SIZE, BinaryManifestWriter.FOOTER_SIZE);
+            indexOffset = footer.getLong();
+            records = footer.getLong();
+            final int blocks = footer.getInt();
+            sorted = (footer.getInt() & BinaryManifestWriter.SORTED) != 0;
+            if (footer.getInt() != BinaryManifestWriter.MAGIC || digits <= 0 || digits > 16 || blockRecords <= 0
+                    || blocks < 0 || indexOffset + (long) Long.BYTES * blocks != size - BinaryManifestWriter.FOOTER_SIZE
+                    || (records + blockRecords - 1) / blockRecords != blocks) {
+                throw new IOException("The binary manifest is truncated or corrupted");
+            }
+            index = new long[blocks];
+            read(indexOffset, Long.BYTES * blocks).asLongBuffer().get(index);
+        } catch (final IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the binary manifest");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public int getDigits() {
+        return digits;
+    }
+
+    /**
+     * Returns the number of records, including empty lines.
+     */
+    long size() {
+        return records;
+    }
+
+    /**
+     * Returns the number of blocks.
+     */
+    int getBlockCount() {
+        return index.length;
+    }
+
+    /**
+     * Tells whether the manifest has no empty lines and its paths never decrease, so {@link #find} can be used.
+     */
+    boolean isSorted() {
+        return sorted;
+    }
+
+    private ByteBuffer map(final int block) throws IOException {
+        final long start = index[block];
+        final long end = block + 1 < index.length ? index[block + 1] : indexOffset;
+        if (window == null || start < windowStart || end > windowStart + window.capacity()) {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(Math.max(MAP_WINDOW_SIZE, end - start), indexOffset - start));
+        }
+        return window.duplicate().position((int) (start - windowStart)).limit((int) (end - windowStart));
+    }
+
+    /**
+     * Decodes a block.
+     *
+     * @param block the index of the block.
+     * @return the records of the block in order.
+     * @throws IOException if the block cannot be read or is corrupted.
+     */
+    List<Entry> readBlock(final int block) throws IOException {
+        final var buffer = map(block);
+        final int count = (int) Math.min(blockRecords, records - (long) block * blockRecords);
+        final List<Entry> entries = new ArrayList<>(count);
+        byte[] previous = new byte[0];
+        try {
+            for (int i = 0; i < count; ++i) {
+                final int prefix = Varints.get(buffer);
+                if ((prefix & 1) != 0) {
+                    entries.add(new Entry(0, null));
+                    continue;
+                }
+                final int shared = prefix >>> 1;
+                final var path = Arrays.copyOf(previous, shared + Varints.get(buffer));
+                buffer.get(path, shared, path.length - shared);
+                long hash = 0;
+                for (int j = 0; j < hashBytes; ++j) {
+                    hash = hash << 8 | buffer.get() & 0xff;
+                }
+                entries.add(new Entry(hash, new String(path, StandardCharsets.UTF_8)));
+                previous = path;
+            }
+        } catch (final RuntimeException ex) {
+            throw new IOException("The binary manifest is corrupted", ex);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns a record by its ordinal number.
+     *
+     * @param ordinal the number of the record, starting from zero.
+     * @return the record.
+     * @throws IOException if the block of the record cannot be read.
+     */
+    Entry get(final long ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= records) {
+            throw new IndexOutOfBoundsException("No record " + ordinal + " in a manifest of " + records);
+        }
+        return readBlock((int) (ordinal / blockRecords)).get((int) (ordinal % blockRecords));
+    }
+
+    /**
+     * Looks an entry up by its path in a {@link #isSorted() sorted} manifest, decoding a single block.
+     *
+     * @param file the path of the entry.
+     * @return the first entry with this path, or {@code null} if there is none.
+     * @throws IOException if the manifest cannot be read.
+     * @throws IllegalStateException if the manifest is not sorted.
+     */
+    Entry find(final String file) throws IOException {
+        if (!sorted) {
+            throw new IllegalStateException("The binary manifest is not sorted");
+        }
+        int low = 0;
+        int high = index.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (readBlock(mid).get(0).file.compareTo(file) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int block = Math.max(low - 1, 0); block <= Math.min(low, index.length - 1); ++block) {
+            for (final var entry : readBlock(block)) {
+                if (entry.file.equals(file)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry next() throws IOException {
+        while (nextRecord == current.size()) {
+            if (nextBlock == index.length) {
+                return null;
+            }
+            current = readBlock(nextBlock++);
+            nextRecord = 0;
+        }
+        return current.get(nextRecord++);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
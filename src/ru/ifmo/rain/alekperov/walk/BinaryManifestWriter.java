@@ -0,0 +1,139 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes manifests in the compact binary format read by {@link BinaryManifestReader}.
+ *
+ * <p>The file starts with a header: the magic number, the format version, the number of hexadecimal digits
+ * of the hashes in the text form and the number of records per block (four big-endian {@code int}s).
+ * Records are grouped into blocks, and the paths are front-coded within a block: every record starts
+ * with a varint holding twice the length of the prefix shared with the previous path, plus one for
+ * empty lines, followed (for entries) by the varint length and the UTF-8 bytes of the rest of the path
+ * and the big-endian hash in a fixed number of bytes. The first path of every block is stored in full,
+ * so any block can be decoded on its own.
+ *
+ * <p>The blocks are followed by the index, the file offsets of the blocks as {@code long}s, and the footer:
+ * the offset of the index, the number of records, the number of blocks, the flags
+ * ({@link #SORTED} if there are no empty lines and paths never decrease) and the magic number again.
+ */
+class BinaryManifestWriter implements ManifestOutput {
+
+    static final int MAGIC = 0x574c4b4d;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int FOOTER_SIZE = 28;
+    static final int SORTED = 1;
+
+    private static final int BLOCK_RECORDS = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final int digits;
+    private final int hashBytes;
+    private byte[] bytes = new byte[BUFFER_SIZE];
+    private int size;
+    private long position;
+    private long[] index = new long[16];
+    private int blocks;
+    private long records;
+    private byte[] previous = new byte[0];
+    private String previousPath;
+    private boolean sorted = true;
+
+    /**
+     * Creates or truncates the file and writes the header.
+     *
+     * @param file the manifest file.
+     * @param bits the number of significant bits in the hashes.
+     * @throws IOException if the file cannot be opened.
+     */
+    BinaryManifestWriter(final Path file, final int bits) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        digits = (bits + 3) / 4;
+        this.hashBytes = (digits + 1) / 2;
+        final var header = ByteBuffer.wrap(bytes);
+        header.putInt(MAGIC).putInt(VERSION).putInt(digits).putInt(BLOCK_RECORDS);
+        size = HEADER_SIZE;
+    }
+
+    private void reserve(final int length) throws IOException {
+        if (size + length > bytes.length) {
+            flush();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        final var buffer = ByteBuffer.wrap(bytes, 0, size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        position += size;
+        size = 0;
+    }
+
+    private void startRecord() {
+        if (records++ % BLOCK_RECORDS == 0) {
+            if (blocks == index.length) {
+                index = Arrays.copyOf(index, 2 * blocks);
+            }
+            index[blocks++] = position + size;
+            previous = new byte[0];
+        }
+    }
+
+    @Override
+    public void write(final long hash, final String file) throws IOException {
+        if (previousPath != null && previousPath.compareTo(file) > 0) {
+            sorted = false;
+        }
+        previousPath = file;
+        final var path = file.getBytes(StandardCharsets.UTF_8);
+        reserve(2 * 5 + path.length + hashBytes);
+        startRecord();
+        final int mismatch = Arrays.mismatch(previous, path);
+        final int shared = mismatch < 0 ? path.length : mismatch;
+        size = Varints.put(bytes, size, shared << 1);
+        size = Varints.put(bytes, size, path.length - shared);
+        System.arraycopy(path, shared, bytes, size, path.length - shared);
+        size += path.length - shared;
+        for (int i = hashBytes - 1; i >= 0; --i) {
+            bytes[size++] = (byte) (hash >>> 8 * i);
+        }
+        previous = path;
+    }
+
+    @Override
+    public void newLine() throws IOException {
+        sorted = false;
+        reserve(1);
+        startRecord();
+        bytes[size++] = 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            final long indexOffset = position + size;
+            reserve(Long.BYTES * blocks + FOOTER_SIZE);
+            final var tail = ByteBuffer.wrap(bytes, size, bytes.length - size);
+            for (int i = 0; i < blocks; ++i) {
+                tail.putLong(index[i]);
+            }
+            tail.putLong(indexOffset).putLong(records).putInt(blocks).putInt(sorted ? SORTED : 0).putInt(MAGIC);
+            size = tail.position();
+            flush();
+        }
+    }
+
+}
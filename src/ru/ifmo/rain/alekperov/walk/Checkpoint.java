@@ -0,0 +1,156 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress of a walk, periodically saved so that an interrupted walk can be resumed.
+ * The progress consists of the number of the input line being walked, the number of entries of that root
+ * which are already in the manifest, the last of these entries, and the length of the manifest up to it.
+ * The name of the hash function and the size and modification time of the input file are saved along,
+ * and a checkpoint of another input or hash function is refused rather than resumed into a mixed manifest.
+ */
+class Checkpoint {
+
+    private static final int MAGIC = 0x57434b32;
+    private static final long INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final Path file;
+    private final String function;
+    private final long inputSize;
+    private final long inputModified;
+    private final boolean resumed;
+    private final long line;
+    private final long entries;
+    private final String lastEntry;
+    private final long offset;
+    private long lastSaved = System.nanoTime();
+
+    private Checkpoint(final Path file, final String function, final long inputSize, final long inputModified,
+                       final boolean resumed, final long line, final long entries, final String lastEntry,
+                       final long offset) {
+        this.file = file;
+        this.function = function;
+        this.inputSize = inputSize;
+        this.inputModified = inputModified;
+        this.resumed = resumed;
+        this.line = line;
+        this.entries = entries;
+        this.lastEntry = lastEntry;
+        this.offset = offset;
+    }
+
+    /**
+     * Loads the checkpoint from the file, or starts from scratch if there is no such file.
+     *
+     * @param file the checkpoint file.
+     * @param function the name of the hash function of the walk.
+     * @param input the input file of the walk.
+     * @return the loaded checkpoint.
+     * @throws IOException if the file exists but cannot be read, is corrupted,
+     * or was saved for another input or hash function.
+     */
+    static Checkpoint load(final Path file, final String function, final Path input) throws IOException {
+        final var attrs = Files.readAttributes(input, BasicFileAttributes.class);
+        final long size = attrs.size();
+        final long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (!Files.exists(file)) {
+            return new Checkpoint(file, function, size, modified, false, 0, 0, "", 0);
+        }
+        try (final var is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file");
+            }
+            if (!is.readUTF().equals(function)) {
+                throw new IOException("The checkpoint was saved with another hash function");
+            }
+            if (is.readLong() != size || is.readLong() != modified) {
+                throw new IOException("The input file has changed since the checkpoint");
+            }
+            return new Checkpoint(file, function, size, modified, true,
+                    is.readLong(), is.readLong(), is.readUTF(), is.readLong());
+        }
+    }
+
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Returns the number of input lines to skip.
+     */
+    long getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the number of entries of the first walked root to skip.
+     */
+    long getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the last skipped entry of the first walked root.
+     */
+    String getLastEntry() {
+        return lastEntry;
+    }
+
+    /**
+     * Returns the length of the manifest to keep.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    boolean isDue() {
+        return System.nanoTime() - lastSaved >= INTERVAL;
+    }
+
+    /**
+     * Atomically replaces the checkpoint file. The manifest must be durably written up to {@code offset} before.
+     *
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    void save(final long line, final long entries, final String lastEntry, final long offset) throws IOException {
+        final var temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (final var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final var os = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                os.writeInt(MAGIC);
+                os.writeUTF(function);
+                os.writeLong(inputSize);
+                os.writeLong(inputModified);
+                os.writeLong(line);
+                os.writeLong(entries);
+                os.writeUTF(lastEntry);
+                os.writeLong(offset);
+                os.flush();
+                // The contents must be durable before the rename which makes them the checkpoint
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        lastSaved = System.nanoTime();
+    }
+
+    /**
+     * Removes the checkpoint file after the walk is complete.
+     *
+     * @throws IOException if the file cannot be deleted.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+}
@@ -0,0 +1,159 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+
+/**
+ * Follows the hash of every chunked file with the hashes of its chunks, named {@code file#offset+length},
+ * and counts how much of the walked data is unique and how much repeats chunks seen before.
+ * Chunks are told apart by their hashes and lengths, so a 64-bit hash function should be used
+ * for the statistics of large trees to be exact.
+ *
+ * <p>The distinct chunks are kept in an open-addressing table of at most {@value #MAX_DISTINCT} chunks,
+ * about 48 MiB. When it is full, the walk switches to distinct sampling: only the chunks whose keys have
+ * one more low bit of their mixed hash equal to zero are kept, the others are dropped, and the unique counts
+ * are estimated by scaling the kept ones up. The statistics are then marked as estimated.
+ */
+class ChunkWriter implements HashWriter {
+
+    static final int MAX_DISTINCT = 1 << 21;
+
+    private final HashWriter writer;
+    private final ChunkingHasher hasher;
+    private final int maxDistinct;
+    private long[] keys = new long[1 << 10];
+    private int[] lengths = new int[1 << 10];
+    private int distinct;
+    private long distinctBytes;
+    private int level;
+    private long chunks;
+    private long bytes;
+
+    ChunkWriter(final HashWriter writer, final ChunkingHasher hasher) {
+        this(writer, hasher, MAX_DISTINCT);
+    }
+
+    ChunkWriter(final HashWriter writer, final ChunkingHasher hasher, final int maxDistinct) {
+        this.writer = writer;
+        this.hasher = hasher;
+        this.maxDistinct = maxDistinct;
+    }
+
+    private static long mix(final long key) {
+        final long h = (key ^ key >>> 33) * 0xff51afd7ed558ccdL;
+        return h ^ h >>> 33;
+    }
+
+    private boolean isSampled(final long key) {
+        return (mix(key) & (1L << level) - 1) == 0;
+    }
+
+    /**
+     * Rebuilds the table with the given capacity, keeping only the chunks sampled at the current level.
+     */
+    private void rebuild(final int capacity) {
+        final var oldKeys = keys;
+        final var oldLengths = lengths;
+        keys = new long[capacity];
+        lengths = new int[capacity];
+        distinct = 0;
+        distinctBytes = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldLengths[i] != 0 && isSampled(oldKeys[i])) {
+                insert(oldKeys[i], oldLengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds a chunk to the open-addressing table, where a zero length marks an empty cell.
+     */
+    private void insert(final long key, final int length) {
+        final int mask = keys.length - 1;
+        for (int i = (int) mix(key) & mask; ; i = i + 1 & mask) {
+            if (lengths[i] == 0) {
+                keys[i] = key;
+                lengths[i] = length;
+                ++distinct;
+                distinctBytes += length;
+                return;
+            }
+            if (keys[i] == key && lengths[i] == length) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts a chunk of the walked data.
+     *
+     * @param hash the hash of the chunk.
+     * @param length the length of the chunk, positive.
+     */
+    void count(final long hash, final int length) {
+        ++chunks;
+        bytes += length;
+        final long key = hash * 0x9e3779b97f4a7c15L + length;
+        if (!isSampled(key)) {
+            return;
+        }
+        insert(key, length);
+        if (distinct > maxDistinct) {
+            ++level;
+            rebuild(keys.length);
+        } else if (2 * distinct > keys.length) {
+            rebuild(2 * keys.length);
+        }
+    }
+
+    /**
+     * Returns the number of unique chunks, estimated if the chunks are sampled.
+     */
+    long getUniqueChunks() {
+        return (long) distinct << level;
+    }
+
+    /**
+     * Returns the number of bytes in unique chunks, estimated if the chunks are sampled.
+     */
+    long getUniqueBytes() {
+        return Math.min(bytes, distinctBytes << level);
+    }
+
+    @Override
+    public void write(final long hash, final String file) throws IOException {
+        writer.write(hash, file);
+        final var fileChunks = hasher.take(file);
+        if (fileChunks == null) {
+            return;
+        }
+        long offset = 0;
+        for (int i = 0; i < fileChunks.size(); ++i) {
+            final long chunkHash = fileChunks.getHash(i);
+            final int length = fileChunks.getLength(i);
+            writer.write(chunkHash, file + "#" + offset + "+" + length);
+            offset += length;
+            count(chunkHash, length);
+        }
+    }
+
+    @Override
+    public void enterDirectory(final String dir) throws IOException {
+        writer.enterDirectory(dir);
+    }
+
+    @Override
+    public void exitDirectory(final String dir) throws IOException {
+        writer.exitDirectory(dir);
+    }
+
+    /**
+     * Prints the numbers of all and unique chunks and bytes.
+     */
+    void printStatistics() {
+        final long uniqueBytes = getUniqueBytes();
+        System.out.printf("%d chunks, %d bytes; unique%s: %d chunks, %d bytes; shared: %d bytes (%.1f%%)%n",
+                chunks, bytes, level > 0 ? " (estimated)" : "", getUniqueChunks(), uniqueBytes, bytes - uniqueBytes,
+                bytes == 0 ? 0.0 : 100.0 * (bytes - uniqueBytes) / bytes);
+    }
+
+}
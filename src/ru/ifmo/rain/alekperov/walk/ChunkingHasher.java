@@ -0,0 +1,125 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Checksum;
+
+/**
+ * Hashes files while splitting them into content-defined chunks with the FastCDC algorithm: a Gear rolling hash
+ * is computed over the bytes and a chunk ends where its masked bits are zero. A stricter mask is used before the
+ * average chunk size and a looser one after it, which narrows the distribution of chunk sizes.
+ * Since a 64-bit Gear hash only depends on the last 64 bytes, the bytes before them in the minimal chunk are skipped.
+ * The chunk hashes are kept until the file is written by {@link ChunkWriter}.
+ */
+class ChunkingHasher implements FileHasher {
+
+    private static final int MIN_SIZE = 1 << 11;
+    private static final int AVERAGE_SIZE = 1 << 13;
+    private static final int MAX_SIZE = 1 << 16;
+
+    private static final long MASK_SMALL = 0x0003590703530000L;
+    private static final long MASK_LARGE = 0x0000d90003530000L;
+    private static final long[] GEAR = new SplittableRandom(0x57414c4bL).longs(256).toArray();
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The hashes and the lengths of the chunks of a file, in order.
+     */
+    static final class Chunks {
+        private long[] hashes = new long[16];
+        private int[] lengths = new int[16];
+        private int count;
+
+        private void add(final long hash, final int length) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * count);
+                lengths = Arrays.copyOf(lengths, 2 * count);
+            }
+            hashes[count] = hash;
+            lengths[count++] = length;
+        }
+
+        int size() {
+            return count;
+        }
+
+        long getHash(final int i) {
+            return hashes[i];
+        }
+
+        int getLength(final int i) {
+            return lengths[i];
+        }
+    }
+
+    private final HashFunction function;
+    private final Map<String, Chunks> pending = new ConcurrentHashMap<>();
+
+    ChunkingHasher(final HashFunction function) {
+        this.function = function;
+    }
+
+    @Override
+    public long hash(final Path file, final BasicFileAttributes attrs) throws IOException {
+        final var whole = function.newChecksum();
+        final var chunks = new Chunks();
+        final var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final var bytes = buffer.array();
+        Checksum chunk = function.newChecksum();
+        long fingerprint = 0;
+        int length = 0;
+        try (final var channel = FileChannel.open(file)) {
+            int count;
+            while ((count = channel.read(buffer.clear())) != -1) {
+                whole.update(bytes, 0, count);
+                int start = 0;
+                int i = 0;
+                while (i < count) {
+                    if (length < MIN_SIZE - Long.SIZE) {
+                        final int skip = Math.min(MIN_SIZE - Long.SIZE - length, count - i);
+                        i += skip;
+                        length += skip;
+                        continue;
+                    }
+                    fingerprint = (fingerprint << 1) + GEAR[bytes[i++] & 0xff];
+                    if (++length < MIN_SIZE) {
+                        continue;
+                    }
+                    final long mask = length < AVERAGE_SIZE ? MASK_SMALL : MASK_LARGE;
+                    if ((fingerprint & mask) == 0 || length == MAX_SIZE) {
+                        chunk.update(bytes, start, i - start);
+                        chunks.add(chunk.getValue(), length);
+                        chunk = function.newChecksum();
+                        start = i;
+                        fingerprint = 0;
+                        length = 0;
+                    }
+                }
+                chunk.update(bytes, start, count - start);
+            }
+        }
+        if (length > 0) {
+            chunks.add(chunk.getValue(), length);
+        }
+        pending.put(file.toString(), chunks);
+        return whole.getValue();
+    }
+
+    /**
+     * Removes and returns the chunks of a hashed file.
+     *
+     * @param file the path of the file, as written to the manifest.
+     * @return the chunks, or {@code null} if the file has not been hashed successfully.
+     */
+    Chunks take(final String file) {
+        return pending.remove(file);
+    }
+
+}
@@ -0,0 +1,227 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * Walks the tree on the calling thread and hashes every file in a task of its own, which suits trees
+ * of many small files where the time is spent waiting for system calls.
+ * The number of files being hashed at once is limited for each device, so a slow mount cannot occupy
+ * all the tasks. The walking thread never waits for a device: on virtual threads every task waits
+ * for a permit of its device itself, and without them the tasks of a busy device are queued
+ * and started as its running tasks finish, so the pool never grows beyond the sum of the per-device limits.
+ */
+class ConcurrentWalker implements Walker {
+
+    private static final int WINDOW = 1 << 12;
+
+    /**
+     * A hash to write or, if {@code hash} is {@code null}, a directory boundary.
+     */
+    private static final class Pending {
+        private final String file;
+        private final Future<Long> hash;
+        private final boolean enter;
+
+        Pending(final String file, final Future<Long> hash, final boolean enter) {
+            this.file = file;
+            this.hash = hash;
+            this.enter = enter;
+        }
+    }
+
+    /**
+     * The tasks of a device, used without virtual threads.
+     */
+    private final class Device {
+        private final Deque<Runnable> queued = new ArrayDeque<>();
+        private int running;
+
+        synchronized void start(final Runnable task) {
+            if (running < perDevice) {
+                ++running;
+                execute(task);
+            } else {
+                queued.add(task);
+            }
+        }
+
+        private void execute(final Runnable task) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finish();
+                }
+            });
+        }
+
+        private synchronized void finish() {
+            final var next = queued.poll();
+            if (next != null) {
+                execute(next);
+            } else {
+                --running;
+            }
+        }
+    }
+
+    private final FileHasher hasher;
+    private final int perDevice;
+    private final PathFilter filter;
+    private final FileTree tree;
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Map<String, Semaphore> limits = new ConcurrentHashMap<>();
+    private final Map<String, Device> queues = new ConcurrentHashMap<>();
+    private final BiFunction<Path, BasicFileAttributes, String> devices;
+
+    /**
+     * Creates a walker.
+     *
+     * @param hasher the hasher of the files.
+     * @param perDevice the maximum number of files of the same device to hash at once.
+     * @param filter the filter of the walked paths.
+     * @param tree the attributes to read.
+     */
+    ConcurrentWalker(final FileHasher hasher, final int perDevice, final PathFilter filter, final FileTree tree) {
+        this(hasher, perDevice, filter, tree, ConcurrentWalker::getDevice);
+    }
+
+    /**
+     * Creates a walker which tells the devices of the files by the given function of the root and the attributes.
+     */
+    ConcurrentWalker(final FileHasher hasher, final int perDevice, final PathFilter filter, final FileTree tree,
+                     final BiFunction<Path, BasicFileAttributes, String> devices) {
+        this.hasher = hasher;
+        this.perDevice = perDevice;
+        this.filter = filter;
+        this.tree = tree;
+        this.devices = devices;
+        final var virtualExecutor = newVirtualExecutor();
+        virtual = virtualExecutor != null;
+        executor = virtual ? virtualExecutor : Executors.newCachedThreadPool();
+    }
+
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the key of the device the file is stored on.
+     */
+    private static String getDevice(final Path root, final BasicFileAttributes attrs) {
+        final var device = FileKeys.getDevice(attrs);
+        return device != null ? device : root.toString();
+    }
+
+    private Future<Long> submit(final Path file, final BasicFileAttributes attrs, final String device) {
+        if (virtual) {
+            final var limit = limits.computeIfAbsent(device, key -> new Semaphore(perDevice));
+            return executor.submit(() -> {
+                limit.acquire();
+                try {
+                    return RecursiveWalk.hashFile(hasher, file, attrs);
+                } finally {
+                    limit.release();
+                }
+            });
+        }
+        final var task = new FutureTask<>(() -> RecursiveWalk.hashFile(hasher, file, attrs));
+        queues.computeIfAbsent(device, key -> new Device()).start(task);
+        return task;
+    }
+
+    private static void writeFirst(final Deque<Pending> pending, final HashWriter writer) throws IOException {
+        final var first = pending.poll();
+        if (first.hash == null) {
+            if (first.enter) {
+                writer.enterDirectory(first.file);
+            } else {
+                writer.exitDirectory(first.file);
+            }
+            return;
+        }
+        try {
+            writer.write(first.hash.get(), first.file);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (final ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    @Override
+    public void walk(final Path root, final HashWriter writer) throws IOException {
+        final Deque<Pending> pending = new ArrayDeque<>();
+        tree.walk(root, new SimpleFileVisitor<>() {
+            private void add(final String file, final Future<Long> hash, final boolean enter) throws IOException {
+                pending.add(new Pending(file, hash, enter));
+                if (pending.size() > WINDOW) {
+                    writeFirst(pending, writer);
+                }
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (!filter.accepts(root, file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                add(file.toString(), submit(file, attrs, devices.apply(root, attrs)), false);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
+                if (!filter.accepts(root, file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                RecursiveWalk.showOpenError(file.toString(), ex);
+                add(file.toString(), CompletableFuture.completedFuture(0L), false);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                if (filter.excludes(root, dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                add(dir.toString(), null, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException {
+                if (ex != null) {
+                    while (!pending.isEmpty()) {
+                        writeFirst(pending, writer);
+                    }
+                    throw ex;
+                }
+                add(dir.toString(), null, false);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        while (!pending.isEmpty()) {
+            writeFirst(pending, writer);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
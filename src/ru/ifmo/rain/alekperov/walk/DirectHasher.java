@@ -0,0 +1,121 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashes files opened with {@code O_DIRECT}, reading them into block-aligned direct buffers, so that a bulk walk
+ * does not evict the page cache of the other processes. When a file which can be read normally cannot be opened
+ * for direct I/O, the device is assumed not to support it and its files are hashed by the fallback hasher
+ * from then on. A direct read which fails, as a transient error or a file truncated in the middle of the read,
+ * only makes that file be hashed again by the fallback hasher.
+ * Reads may return fewer bytes than requested, as they do on network and FUSE file systems; once a read ends
+ * at an offset which is not block-aligned before the end of the file, the rest is read without direct I/O.
+ */
+class DirectHasher implements FileHasher {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int MAX_BLOCK_SIZE = 1 << 16;
+    private static final int UNSUPPORTED = -1;
+
+    private final HashFunction function;
+    private final FileHasher fallback;
+    private final Map<String, Integer> blockSizes = new ConcurrentHashMap<>();
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a hasher.
+     *
+     * @param function the hash function to compute.
+     * @param fallback the hasher for the files on which direct I/O is not supported.
+     */
+    DirectHasher(final HashFunction function, final FileHasher fallback) {
+        this.function = function;
+        this.fallback = fallback;
+    }
+
+    private static int getBlockSize(final Path file) {
+        try {
+            final long size = Files.getFileStore(file).getBlockSize();
+            return size > 0 && size <= MAX_BLOCK_SIZE && CHUNK_SIZE % size == 0 ? (int) size : UNSUPPORTED;
+        } catch (final IOException | UnsupportedOperationException ex) {
+            return UNSUPPORTED;
+        }
+    }
+
+    private ByteBuffer takeBuffer() {
+        final var buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(CHUNK_SIZE + MAX_BLOCK_SIZE).alignedSlice(MAX_BLOCK_SIZE);
+    }
+
+    /**
+     * Hashes the file read through the channel opened with {@code O_DIRECT}.
+     *
+     * @param channel the channel to read.
+     * @param file the file to reopen if the rest of it has to be read without direct I/O.
+     * @param blockSize the alignment of the direct reads.
+     * @return the hash of the file.
+     * @throws IOException if an I/O error occurs.
+     */
+    long hashDirect(final FileChannel channel, final Path file, final int blockSize) throws IOException {
+        final var checksum = function.newChecksum();
+        final var buffer = takeBuffer();
+        try {
+            long position = 0;
+            int count;
+            while ((count = channel.read(buffer.clear())) != -1) {
+                checksum.update(buffer.flip());
+                position += count;
+                // Direct reads must start at aligned offsets
+                if (position % blockSize != 0) {
+                    if (position < channel.size()) {
+                        try (final var rest = FileChannel.open(file)) {
+                            return Hashing.hash(rest.position(position), checksum);
+                        }
+                    }
+                    break;
+                }
+            }
+        } finally {
+            buffers.add(buffer);
+        }
+        return checksum.getValue();
+    }
+
+    @Override
+    public long hash(final Path file, final BasicFileAttributes attrs) throws IOException {
+        final var device = FileKeys.getDevice(attrs);
+        final int blockSize = device != null
+                ? blockSizes.computeIfAbsent(device, d -> getBlockSize(file)) : getBlockSize(file);
+        if (blockSize == UNSUPPORTED) {
+            return fallback.hash(file, attrs);
+        }
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, ExtendedOpenOption.DIRECT);
+        } catch (final IOException | UnsupportedOperationException ex) {
+            final long hash = fallback.hash(file, attrs);
+            if (device != null) {
+                blockSizes.put(device, UNSUPPORTED);
+            }
+            return hash;
+        }
+        try (channel) {
+            return hashDirect(channel, file, blockSize);
+        } catch (final IOException ex) {
+            return fallback.hash(file, attrs);
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.Checksum;
+
+/**
+ * Finds files with equal contents while reading as little as possible.
+ * Files are first grouped by size, then the candidates of equal size are grouped by a hash of their first
+ * and last {@value #SAMPLE_SIZE} bytes. The files which are still not unique are read together
+ * and compared byte for byte, so every one of them is read once and only until it differs from all the others.
+ * Groups of more than {@value #MAX_OPEN} files are first split by their full hashes to bound the number
+ * of open files.
+ */
+class DuplicateFinder {
+
+    private static final int SAMPLE_SIZE = 1 << 12;
+    private static final int COMPARE_BUFFER_SIZE = 1 << 15;
+    static final int MAX_OPEN = 256;
+
+    private static final class Candidate {
+        private final Path file;
+        private final BasicFileAttributes attrs;
+
+        Candidate(final Path file, final BasicFileAttributes attrs) {
+            this.file = file;
+            this.attrs = attrs;
+        }
+    }
+
+    private final HashFunction function;
+    private final FileHasher hasher;
+    private final PathFilter filter;
+    private final Map<Long, List<Candidate>> bySize = new LinkedHashMap<>();
+
+    /**
+     * Creates a finder.
+     *
+     * @param function the hash function to use for the samples and the reported hashes.
+     * @param hasher the hasher to use for the full contents of large groups, computing the same function.
+     * @param filter the filter of the walked paths.
+     */
+    DuplicateFinder(final HashFunction function, final FileHasher hasher, final PathFilter filter) {
+        this.function = function;
+        this.hasher = hasher;
+        this.filter = filter;
+    }
+
+    /**
+     * Collects the regular files of the given tree. No file is opened at this stage.
+     *
+     * @param root the root of the tree.
+     * @throws IOException if the walk fails.
+     */
+    void add(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                return filter.excludes(root, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && filter.accepts(root, file)) {
+                    bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(new Candidate(file, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException ex) {
+                RecursiveWalk.showOpenError(file.toString(), ex);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private long hashSample(final Path file, final long size) throws IOException {
+        final var checksum = function.newChecksum();
+        try (final var channel = FileChannel.open(file)) {
+            if (size <= 2 * SAMPLE_SIZE) {
+                return Hashing.hash(channel, checksum);
+            }
+            final var buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+            for (final long position : new long[]{0, size - SAMPLE_SIZE}) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) == -1) {
+                        break;
+                    }
+                }
+                checksum.update(buffer.array(), 0, buffer.position());
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private interface Key {
+        long get(Candidate candidate) throws IOException;
+    }
+
+    private static Map<Long, List<Candidate>> split(final List<Candidate> group, final Key key) {
+        final Map<Long, List<Candidate>> result = new LinkedHashMap<>();
+        for (final var candidate : group) {
+            try {
+                result.computeIfAbsent(key.get(candidate), k -> new ArrayList<>()).add(candidate);
+            } catch (final IOException ex) {
+                RecursiveWalk.showReadError(candidate.file.toString(), ex);
+            }
+        }
+        result.values().removeIf(candidates -> candidates.size() < 2);
+        return result;
+    }
+
+    private static void fill(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * A candidate being read in lockstep with the others of its group.
+     */
+    private static final class Reading {
+        private final Candidate candidate;
+        private final FileChannel channel;
+        private final Checksum checksum;
+        private final ByteBuffer buffer = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+
+        Reading(final Candidate candidate, final FileChannel channel, final Checksum checksum) {
+            this.candidate = candidate;
+            this.channel = channel;
+            this.checksum = checksum;
+        }
+
+        boolean next() {
+            try {
+                fill(channel, buffer.clear());
+            } catch (final IOException ex) {
+                RecursiveWalk.showReadError(candidate.file.toString(), ex);
+                return false;
+            }
+            checksum.update(buffer.array(), 0, buffer.position());
+            buffer.flip();
+            return true;
+        }
+    }
+
+    private static final class Cluster {
+        private final long hash;
+        private final List<Candidate> files = new ArrayList<>();
+
+        Cluster(final long hash) {
+            this.hash = hash;
+        }
+    }
+
+    private static void close(final Reading reading) {
+        try {
+            reading.channel.close();
+        } catch (final IOException ex) {
+            RecursiveWalk.showReadError(reading.candidate.file.toString(), ex);
+        }
+    }
+
+    private static List<Reading> partOf(final List<List<Reading>> parts, final Reading reading) {
+        for (final var part : parts) {
+            if (part.get(0).buffer.equals(reading.buffer)) {
+                return part;
+            }
+        }
+        final List<Reading> part = new ArrayList<>();
+        parts.add(part);
+        return part;
+    }
+
+    /**
+     * Reads the files of the group block by block, all at once, and splits them by the contents of every block.
+     * A file stops being read as soon as no other file has the same contents, and every file is read at most once.
+     * The hashes of the clusters are computed along the way.
+     */
+    private List<Cluster> compare(final List<Candidate> group) {
+        final List<Cluster> result = new ArrayList<>();
+        final List<Reading> open = new ArrayList<>();
+        try {
+            for (final var candidate : group) {
+                try {
+                    open.add(new Reading(candidate, FileChannel.open(candidate.file), function.newChecksum()));
+                } catch (final IOException ex) {
+                    RecursiveWalk.showReadError(candidate.file.toString(), ex);
+                }
+            }
+            final Deque<List<Reading>> pending = new ArrayDeque<>();
+            pending.add(open);
+            while (!pending.isEmpty()) {
+                final List<List<Reading>> parts = new ArrayList<>();
+                for (final var reading : pending.poll()) {
+                    if (!reading.next()) {
+                        continue;
+                    }
+                    partOf(parts, reading).add(reading);
+                }
+                for (final var part : parts) {
+                    if (part.size() < 2) {
+                        continue;
+                    }
+                    final var first = part.get(0);
+                    if (first.buffer.limit() < COMPARE_BUFFER_SIZE) {
+                        final var cluster = new Cluster(first.checksum.getValue());
+                        part.forEach(reading -> cluster.files.add(reading.candidate));
+                        result.add(cluster);
+                    } else {
+                        pending.add(part);
+                    }
+                }
+            }
+        } finally {
+            open.forEach(DuplicateFinder::close);
+        }
+        result.sort(Comparator.comparingInt(cluster -> group.indexOf(cluster.files.get(0))));
+        return result;
+    }
+
+    /**
+     * Splits the files of a group into the clusters of equal contents, keeping at most {@value #MAX_OPEN}
+     * of them open at once. A larger group is compared in batches with its first file, which is the only one
+     * read more than once, and the files different from it are split again the same way.
+     */
+    private List<Cluster> confirm(final List<Candidate> group) {
+        final List<Cluster> result = new ArrayList<>();
+        var rest = group;
+        while (rest.size() > MAX_OPEN) {
+            final var leader = rest.get(0);
+            Cluster same = null;
+            final List<Candidate> different = new ArrayList<>();
+            for (int i = 1; i < rest.size(); i += MAX_OPEN - 1) {
+                final List<Candidate> batch = new ArrayList<>(List.of(leader));
+                batch.addAll(rest.subList(i, Math.min(i + MAX_OPEN - 1, rest.size())));
+                final Set<Candidate> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (final var cluster : compare(batch)) {
+                    if (cluster.files.get(0) == leader) {
+                        if (same == null) {
+                            same = cluster;
+                        } else {
+                            same.files.addAll(cluster.files.subList(1, cluster.files.size()));
+                        }
+                        matched.addAll(cluster.files);
+                    }
+                }
+                batch.stream().skip(1).filter(candidate -> !matched.contains(candidate)).forEach(different::add);
+            }
+            if (same != null) {
+                result.add(same);
+            }
+            rest = different;
+        }
+        if (rest.size() >= 2) {
+            result.addAll(compare(rest));
+        }
+        return result;
+    }
+
+    private boolean writeClusters(final ManifestOutput writer, final List<Candidate> group,
+                                  boolean first) throws IOException {
+        for (final var cluster : confirm(group)) {
+            if (!first) {
+                writer.newLine();
+            }
+            first = false;
+            for (final var candidate : cluster.files) {
+                writer.write(cluster.hash, candidate.file.toString());
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Writes the clusters of duplicates, separated by empty lines, in the order of their first files.
+     *
+     * @param writer the manifest writer.
+     * @throws IOException if an I/O error occurs while writing.
+     */
+    void write(final ManifestOutput writer) throws IOException {
+        boolean first = true;
+        for (final var sameSize : bySize.values()) {
+            if (sameSize.size() < 2) {
+                continue;
+            }
+            final long size = sameSize.get(0).attrs.size();
+            for (final var sameSample : split(sameSize, candidate -> hashSample(candidate.file, size)).values()) {
+                if (sameSample.size() <= MAX_OPEN || size <= 2 * SAMPLE_SIZE) {
+                    first = writeClusters(writer, sameSample, first);
+                    continue;
+                }
+                for (final var sameHash : split(sameSample, candidate -> hasher.hash(candidate.file, candidate.attrs)).values()) {
+                    first = writeClusters(writer, sameHash, first);
+                }
+            }
+        }
+    }
+
+}
@@ -2,23 +2,175 @@ package ru.ifmo.rain.alekperov.walk;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
 
 public class FNV {
 
     private static final int FNV_32_PRIME = 0x01000193;
     private static final int FNV_32_INIT = 0x811c9dc5;
 
-    public static int get32BitHash(final InputStream is) throws IOException {
-        int hash = FNV_32_INIT;
-        final var buffer = new byte[1024];
-        int c;
-        while ((c = is.read(buffer)) != -1) {
-            for (int i = 0; i < c; ++i) {
-                hash *= FNV_32_PRIME;
-                hash ^= Byte.toUnsignedInt(buffer[i]);
+    private static final long FNV_64_PRIME = 0x100000001b3L;
+    private static final long FNV_64_INIT = 0xcbf29ce484222325L;
+
+    /*
+     * Both hashes are a chain of dependent multiplications, so they cannot be split into independent lanes.
+     * Instead, the input is loaded eight bytes at a time and the chain is unrolled over the bytes of each word,
+     * which removes the per-byte loads and bounds checks from the loop.
+     */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static int update32(int hash, final long word) {
+        hash = (hash * FNV_32_PRIME) ^ ((int) word & 0xff);
+        hash = (hash * FNV_32_PRIME) ^ ((int) (word >>> 8) & 0xff);
+        hash = (hash * FNV_32_PRIME) ^ ((int) (word >>> 16) & 0xff);
+        hash = (hash * FNV_32_PRIME) ^ ((int) (word >>> 24) & 0xff);
+        hash = (hash * FNV_32_PRIME) ^ ((int) (word >>> 32) & 0xff);
+        hash = (hash * FNV_32_PRIME) ^ ((int) (word >>> 40) & 0xff);
+        hash = (hash * FNV_32_PRIME) ^ ((int) (word >>> 48) & 0xff);
+        return (hash * FNV_32_PRIME) ^ ((int) (word >>> 56) & 0xff);
+    }
+
+    private static long update64a(long hash, final long word) {
+        hash = (hash ^ (word & 0xff)) * FNV_64_PRIME;
+        hash = (hash ^ (word >>> 8 & 0xff)) * FNV_64_PRIME;
+        hash = (hash ^ (word >>> 16 & 0xff)) * FNV_64_PRIME;
+        hash = (hash ^ (word >>> 24 & 0xff)) * FNV_64_PRIME;
+        hash = (hash ^ (word >>> 32 & 0xff)) * FNV_64_PRIME;
+        hash = (hash ^ (word >>> 40 & 0xff)) * FNV_64_PRIME;
+        hash = (hash ^ (word >>> 48 & 0xff)) * FNV_64_PRIME;
+        return (hash ^ (word >>> 56)) * FNV_64_PRIME;
+    }
+
+    private static ByteBuffer littleEndian(final ByteBuffer buffer) {
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The 32-bit FNV-1 hash as a {@link Checksum}.
+     */
+    public static class Hash32 implements Checksum {
+
+        private int hash = FNV_32_INIT;
+
+        @Override
+        public void update(final int b) {
+            hash *= FNV_32_PRIME;
+            hash ^= b & 0xff;
+        }
+
+        @Override
+        public void update(final byte[] b, final int off, final int len) {
+            int hash = this.hash;
+            final int end = off + len;
+            int i = off;
+            for (; i <= end - Long.BYTES; i += Long.BYTES) {
+                hash = update32(hash, (long) LONGS.get(b, i));
+            }
+            for (; i < end; ++i) {
+                hash = (hash * FNV_32_PRIME) ^ Byte.toUnsignedInt(b[i]);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            final var input = littleEndian(buffer);
+            final int end = input.limit();
+            int hash = this.hash;
+            int i = 0;
+            for (; i <= end - Long.BYTES; i += Long.BYTES) {
+                hash = update32(hash, input.getLong(i));
+            }
+            for (; i < end; ++i) {
+                hash = (hash * FNV_32_PRIME) ^ Byte.toUnsignedInt(input.get(i));
+            }
+            this.hash = hash;
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public long getValue() {
+            return Integer.toUnsignedLong(hash);
+        }
+
+        @Override
+        public void reset() {
+            hash = FNV_32_INIT;
+        }
+
+    }
+
+    /**
+     * The 64-bit FNV-1a hash as a {@link Checksum}.
+     */
+    public static class Hash64a implements Checksum {
+
+        private long hash = FNV_64_INIT;
+
+        @Override
+        public void update(final int b) {
+            hash ^= b & 0xff;
+            hash *= FNV_64_PRIME;
+        }
+
+        @Override
+        public void update(final byte[] b, final int off, final int len) {
+            long hash = this.hash;
+            final int end = off + len;
+            int i = off;
+            for (; i <= end - Long.BYTES; i += Long.BYTES) {
+                hash = update64a(hash, (long) LONGS.get(b, i));
+            }
+            for (; i < end; ++i) {
+                hash = (hash ^ Byte.toUnsignedLong(b[i])) * FNV_64_PRIME;
             }
+            this.hash = hash;
         }
-        return hash;
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            final var input = littleEndian(buffer);
+            final int end = input.limit();
+            long hash = this.hash;
+            int i = 0;
+            for (; i <= end - Long.BYTES; i += Long.BYTES) {
+                hash = update64a(hash, input.getLong(i));
+            }
+            for (; i < end; ++i) {
+                hash = (hash ^ Byte.toUnsignedLong(input.get(i))) * FNV_64_PRIME;
+            }
+            this.hash = hash;
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public long getValue() {
+            return hash;
+        }
+
+        @Override
+        public void reset() {
+            hash = FNV_64_INIT;
+        }
+
+    }
+
+    public static int get32BitHash(final InputStream is) throws IOException {
+        return (int) Hashing.hash(is, new Hash32());
+    }
+
+    /**
+     * Hashes the contents of the channel starting from its current position.
+     *
+     * @see Hashing#hash(FileChannel, Checksum)
+     */
+    public static int get32BitHash(final FileChannel channel) throws IOException {
+        return (int) Hashing.hash(channel, new Hash32());
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,38 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Computes the hash of a regular file visited by the walker.
+ */
+@FunctionalInterface
+interface FileHasher {
+
+    /**
+     * Returns a hasher which reads the whole file and applies the given function to its contents.
+     *
+     * @param function the hash function to use.
+     * @return the hasher.
+     */
+    static FileHasher of(final HashFunction function) {
+        return (file, attrs) -> {
+            try (final var channel = FileChannel.open(file)) {
+                return Hashing.hash(channel, function.newChecksum());
+            }
+        };
+    }
+
+    /**
+     * Computes the hash of the file.
+     *
+     * @param file the file to hash.
+     * @param attrs the attributes of the file read by the walker.
+     * @return the hash of the file contents.
+     * @throws IOException if the file cannot be opened or read.
+     */
+    long hash(Path file, BasicFileAttributes attrs) throws IOException;
+
+}
@@ -0,0 +1,44 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the device and the inode number from {@link BasicFileAttributes#fileKey() file keys}.
+ * The JDK does not expose them directly, but on Unix-like systems the keys are printed as
+ * {@code (dev=<device>,ino=<inode>)}.
+ */
+class FileKeys {
+
+    private static final Pattern UNIX_KEY = Pattern.compile("\\(dev=(\\p{XDigit}+),ino=(\\d+)\\)");
+
+    private FileKeys() {
+    }
+
+    private static Matcher match(final BasicFileAttributes attrs) {
+        final var key = attrs.fileKey();
+        if (key == null) {
+            return null;
+        }
+        final var matcher = UNIX_KEY.matcher(key.toString());
+        return matcher.matches() ? matcher : null;
+    }
+
+    /**
+     * Returns the device of the file, or {@code null} if it is unknown.
+     */
+    static String getDevice(final BasicFileAttributes attrs) {
+        final var matcher = match(attrs);
+        return matcher == null ? null : matcher.group(1);
+    }
+
+    /**
+     * Returns the inode number of the file, or {@code -1} if it is unknown.
+     */
+    static long getInode(final BasicFileAttributes attrs) {
+        final var matcher = match(attrs);
+        return matcher == null ? -1 : Long.parseLong(matcher.group(2));
+    }
+
+}
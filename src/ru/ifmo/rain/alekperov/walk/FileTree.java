@@ -0,0 +1,157 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Which attributes the walkers read for every file: the basic ones, or the {@link UnixAttributes}
+ * which {@link LinkHasher} needs, so that it does not have to read the number of links by another {@code stat}.
+ * Trees are walked like {@link Files#walkFileTree(Path, FileVisitor)} does, without following symbolic links.
+ */
+enum FileTree {
+
+    BASIC {
+        @Override
+        BasicFileAttributes readAttributes(final Path file) throws IOException {
+            return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        @Override
+        void walk(final Path start, final FileVisitor<? super Path> visitor) throws IOException {
+            Files.walkFileTree(start, visitor);
+        }
+    },
+
+    UNIX {
+        @Override
+        BasicFileAttributes readAttributes(final Path file) throws IOException {
+            return UnixAttributes.read(file);
+        }
+
+        @Override
+        void walk(final Path start, final FileVisitor<? super Path> visitor) throws IOException {
+            visit(this, start, visitor);
+        }
+    };
+
+    /**
+     * Reads the attributes of the file without following symbolic links.
+     *
+     * @param file the file.
+     * @return the attributes.
+     * @throws IOException if the attributes cannot be read.
+     */
+    abstract BasicFileAttributes readAttributes(Path file) throws IOException;
+
+    /**
+     * Walks the tree, passing the attributes read by {@link #readAttributes} to the visitor.
+     *
+     * @param start the root of the tree.
+     * @param visitor the visitor.
+     * @throws IOException if the visitor throws it.
+     */
+    abstract void walk(Path start, FileVisitor<? super Path> visitor) throws IOException;
+
+    /**
+     * A directory being walked.
+     */
+    private static final class Directory {
+        private final Path path;
+        private final DirectoryStream<Path> stream;
+        private final Iterator<Path> entries;
+        private boolean skipped;
+
+        Directory(final Path path, final DirectoryStream<Path> stream) {
+            this.path = path;
+            this.stream = stream;
+            entries = stream.iterator();
+        }
+    }
+
+    /**
+     * Visits a file or starts walking a directory, pushing it onto the stack.
+     */
+    private static FileVisitResult enter(final FileTree tree, final Path path, final FileVisitor<? super Path> visitor,
+                                         final Deque<Directory> stack) throws IOException {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = tree.readAttributes(path);
+        } catch (final IOException ex) {
+            return visitor.visitFileFailed(path, ex);
+        }
+        if (!attrs.isDirectory()) {
+            return visitor.visitFile(path, attrs);
+        }
+        final DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(path);
+        } catch (final IOException ex) {
+            return visitor.visitFileFailed(path, ex);
+        }
+        final FileVisitResult result;
+        try {
+            result = visitor.preVisitDirectory(path, attrs);
+        } catch (final IOException | RuntimeException ex) {
+            stream.close();
+            throw ex;
+        }
+        if (result != FileVisitResult.CONTINUE) {
+            stream.close();
+            return result == FileVisitResult.SKIP_SUBTREE ? FileVisitResult.CONTINUE : result;
+        }
+        stack.push(new Directory(path, stream));
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Walks the tree with an explicit stack of the open directories, so deep trees do not overflow the thread stack.
+     */
+    private static void visit(final FileTree tree, final Path start, final FileVisitor<? super Path> visitor)
+            throws IOException {
+        final Deque<Directory> stack = new ArrayDeque<>();
+        try {
+            if (enter(tree, start, visitor, stack) == FileVisitResult.TERMINATE) {
+                return;
+            }
+            while (!stack.isEmpty()) {
+                final var directory = stack.peek();
+                IOException failure = null;
+                try {
+                    if (!directory.skipped && directory.entries.hasNext()) {
+                        final var result = enter(tree, directory.entries.next(), visitor, stack);
+                        if (result == FileVisitResult.TERMINATE) {
+                            return;
+                        }
+                        directory.skipped = result == FileVisitResult.SKIP_SIBLINGS;
+                        continue;
+                    }
+                } catch (final DirectoryIteratorException ex) {
+                    failure = ex.getCause();
+                }
+                stack.pop().stream.close();
+                final var result = visitor.postVisitDirectory(directory.path, failure);
+                if (result == FileVisitResult.TERMINATE) {
+                    return;
+                }
+                if (result == FileVisitResult.SKIP_SIBLINGS && !stack.isEmpty()) {
+                    stack.peek().skipped = true;
+                }
+            }
+        } finally {
+            while (!stack.isEmpty()) {
+                stack.pop().stream.close();
+            }
+        }
+    }
+
+}
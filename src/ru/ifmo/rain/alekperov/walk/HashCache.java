@@ -0,0 +1,194 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache of file hashes, keyed by the absolute path, size, modification time, device and inode number.
+ * A file whose metadata matches the cached entry is not opened at all.
+ * The entries of the files not visited by the current run are kept as they are, without looking at the files,
+ * so walks over different trees can share a cache; a stale entry never matches, and it is replaced
+ * as soon as its path is walked again. Files modified since the second the run started are
+ * not cached, as they could still be changed within the same modification time.
+ *
+ * <p>The file holds the magic number, the name of the hash function and the number of entries, followed by
+ * the entries sorted by path. The paths are front-coded: every entry starts with the varint length of the prefix
+ * shared with the previous path and the varint length and the UTF-8 bytes of the rest, followed by the size,
+ * the modification time in nanoseconds, the device, the inode number and the hash as {@code long}s.
+ */
+class HashCache implements FileHasher {
+
+    private static final int MAGIC = 0x57484333;
+    private static final int OLD_MAGIC = 0x57484332;
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final long device;
+        private final long inode;
+        private final long hash;
+
+        Entry(final long size, final long modified, final long device, final long inode, final long hash) {
+            this.size = size;
+            this.modified = modified;
+            this.device = device;
+            this.inode = inode;
+            this.hash = hash;
+        }
+
+        Entry(final BasicFileAttributes attrs, final long hash) {
+            this(attrs.size(), getModified(attrs), getDevice(attrs), getInode(attrs), hash);
+        }
+
+        boolean matches(final BasicFileAttributes attrs) {
+            return size == attrs.size() && modified == getModified(attrs)
+                    && device == getDevice(attrs) && inode == getInode(attrs);
+        }
+    }
+
+    private static long getModified(final BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the device of the file, or {@code -1} if it is unknown.
+     */
+    private static long getDevice(final BasicFileAttributes attrs) {
+        if (attrs instanceof UnixAttributes) {
+            return ((UnixAttributes) attrs).getDevice();
+        }
+        final var device = FileKeys.getDevice(attrs);
+        return device == null ? -1 : Long.parseUnsignedLong(device, 16);
+    }
+
+    private static long getInode(final BasicFileAttributes attrs) {
+        return attrs instanceof UnixAttributes ? ((UnixAttributes) attrs).getInode() : FileKeys.getInode(attrs);
+    }
+
+    private final String function;
+    private final FileHasher hasher;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final long started = TimeUnit.SECONDS.toNanos(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+
+    private HashCache(final String function, final FileHasher hasher, final Map<String, Entry> previous) {
+        this.function = function;
+        this.hasher = hasher;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the cache from the given file, starting with an empty one if the file does not exist
+     * or was built with another hash function.
+     *
+     * @param file the cache file.
+     * @param function the name of the hash function computed by {@code hasher}.
+     * @param hasher the hasher to use on cache misses.
+     * @return the loaded cache.
+     * @throws IOException if the file exists but cannot be read or is corrupted.
+     */
+    static HashCache load(final Path file, final String function, final FileHasher hasher) throws IOException {
+        final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        if (Files.exists(file)) {
+            try (final var is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                final int magic = is.readInt();
+                if (magic != MAGIC && magic != OLD_MAGIC) {
+                    throw new IOException("Not a hash cache file");
+                }
+                // The caches of the older format are rebuilt
+                if (magic == OLD_MAGIC || !is.readUTF().equals(function)) {
+                    return new HashCache(function, hasher, entries);
+                }
+                var previous = new byte[0];
+                for (int count = is.readInt(); count > 0; --count) {
+                    final int shared = Varints.read(is);
+                    final int length = Varints.read(is);
+                    if (shared > previous.length || length < 0) {
+                        throw new IOException("Corrupted hash cache file");
+                    }
+                    final var path = Arrays.copyOf(previous, shared + length);
+                    is.readFully(path, shared, length);
+                    entries.put(new String(path, StandardCharsets.UTF_8), new Entry(
+                            is.readLong(), is.readLong(), is.readLong(), is.readLong(), is.readLong()));
+                    previous = path;
+                }
+            }
+        }
+        return new HashCache(function, hasher, entries);
+    }
+
+    @Override
+    public long hash(final Path file, final BasicFileAttributes attrs) throws IOException {
+        final var path = file.toAbsolutePath().toString();
+        final var cached = previous.remove(path);
+        // The attributes of a link do not change with its target, which is hashed
+        if (attrs.isSymbolicLink()) {
+            return hasher.hash(file, attrs);
+        }
+        if (cached != null && cached.matches(attrs)) {
+            current.put(path, cached);
+            return cached.hash;
+        }
+        final long hash = hasher.hash(file, attrs);
+        if (getModified(attrs) < started) {
+            current.put(path, new Entry(attrs, hash));
+        }
+        return hash;
+    }
+
+    /**
+     * Atomically replaces the given file with the entries used since the cache was loaded
+     * and the entries of the files not visited, keeping the permissions of the file.
+     *
+     * @param file the cache file.
+     * @throws IOException if the cache cannot be written.
+     */
+    void save(final Path file) throws IOException {
+        final Map<String, Entry> entries = new TreeMap<>(previous);
+        entries.putAll(current);
+        final var parent = file.toAbsolutePath().getParent();
+        final var temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+            } catch (final NoSuchFileException | UnsupportedOperationException ignored) {
+                // A new cache, or no permissions to keep.
+            }
+            try (final var os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                os.writeInt(MAGIC);
+                os.writeUTF(function);
+                os.writeInt(entries.size());
+                var previous = new byte[0];
+                for (final var e : entries.entrySet()) {
+                    final var path = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    final int mismatch = Arrays.mismatch(previous, path);
+                    final int shared = mismatch < 0 ? path.length : mismatch;
+                    Varints.write(os, shared);
+                    Varints.write(os, path.length - shared);
+                    os.write(path, shared, path.length - shared);
+                    final var entry = e.getValue();
+                    os.writeLong(entry.size);
+                    os.writeLong(entry.modified);
+                    os.writeLong(entry.device);
+                    os.writeLong(entry.inode);
+                    os.writeLong(entry.hash);
+                    previous = path;
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+}
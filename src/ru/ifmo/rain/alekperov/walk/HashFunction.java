@@ -0,0 +1,55 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.util.ServiceLoader;
+import java.util.zip.Checksum;
+
+/**
+ * A hash function which can be used by {@link RecursiveWalk}.
+ * Besides the {@link StandardHashFunction standard ones}, implementations can be registered
+ * as {@link ServiceLoader services}.
+ */
+public interface HashFunction {
+
+    /**
+     * Returns the name used to select this function.
+     *
+     * @return the name of the function.
+     */
+    String getName();
+
+    /**
+     * Returns the number of significant bits in the values of this function, at most 64.
+     *
+     * @return the size of the hash in bits.
+     */
+    int getBits();
+
+    /**
+     * Creates a new checksum computing this function.
+     *
+     * @return a new checksum in the initial state.
+     */
+    Checksum newChecksum();
+
+    /**
+     * Returns the function with the given name, looking through the standard functions first.
+     *
+     * @param name the name of the function.
+     * @return the function with the given name.
+     * @throws IllegalArgumentException if there is no such function.
+     */
+    static HashFunction forName(final String name) {
+        for (final var function : StandardHashFunction.values()) {
+            if (function.getName().equals(name)) {
+                return function;
+            }
+        }
+        for (final var function : ServiceLoader.load(HashFunction.class)) {
+            if (function.getName().equals(name)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash function: " + name);
+    }
+
+}
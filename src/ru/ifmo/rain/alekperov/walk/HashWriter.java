@@ -0,0 +1,25 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+
+/**
+ * Receives the hashes of the walked files in the walking order.
+ */
+@FunctionalInterface
+interface HashWriter {
+
+    void write(long hash, String file) throws IOException;
+
+    /**
+     * Called before the entries of a directory are written.
+     */
+    default void enterDirectory(final String dir) throws IOException {
+    }
+
+    /**
+     * Called after all the entries of a directory are written.
+     */
+    default void exitDirectory(final String dir) throws IOException {
+    }
+
+}
@@ -0,0 +1,64 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+/**
+ * Feeds whole streams and files into {@link Checksum} instances.
+ */
+public class Hashing {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_WINDOW_SIZE = 1 << 26;
+
+    private Hashing() {
+    }
+
+    /**
+     * Reads the stream to the end and returns the resulting value of the checksum.
+     */
+    public static long hash(final InputStream is, final Checksum checksum) throws IOException {
+        final var buffer = new byte[BUFFER_SIZE];
+        int c;
+        while ((c = is.read(buffer)) != -1) {
+            checksum.update(buffer, 0, c);
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Reads the channel from its current position to the end and returns the resulting value of the checksum.
+     * Files of at least {@value #MAP_THRESHOLD} bytes are read through sliding memory-mapped windows,
+     * smaller ones (and anything appended after the size was taken) are read into a heap buffer.
+     */
+    public static long hash(final FileChannel channel, final Checksum checksum) throws IOException {
+        return hash(channel, checksum, BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the channel like {@link #hash(FileChannel, Checksum)}, with a heap buffer of the given size.
+     */
+    static long hash(final FileChannel channel, final Checksum checksum, final int bufferSize) throws IOException {
+        final long size = channel.size();
+        long position = channel.position();
+        if (size - position >= MAP_THRESHOLD) {
+            while (position < size) {
+                final long length = Math.min(MAP_WINDOW_SIZE, size - position);
+                checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+            channel.position(position);
+        }
+        final var buffer = ByteBuffer.allocate(bufferSize);
+        while (channel.read(buffer) != -1) {
+            checksum.update(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        return checksum.getValue();
+    }
+
+}
@@ -0,0 +1,154 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Walks the tree in batches of up to {@value #BATCH_SIZE} entries, counting the directory boundaries and
+ * the files which could not be visited too, and hashes the files of a batch in the order
+ * of their devices and inode numbers, which approximates their physical layout on file systems which allocate
+ * inodes near their data, so a spinning disk reads mostly forwards instead of seeking for every file.
+ * The hashes are still reported in the walking order.
+ */
+class InodeOrderWalker implements Walker {
+
+    private static final int BATCH_SIZE = 1 << 12;
+
+    private static final Comparator<Item> LAYOUT = Comparator
+            .comparing((Item item) -> item.device, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingLong(item -> item.inode);
+
+    /**
+     * A file to hash or, if {@code attrs} is {@code null}, a directory boundary or a file which could not be visited.
+     * The device and the inode number of a file are extracted once, rather than by every comparison of the sort.
+     */
+    private static final class Item {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private final boolean enter;
+        private final boolean exit;
+        private final String device;
+        private final long inode;
+        private long hash;
+
+        Item(final Path path, final BasicFileAttributes attrs, final boolean enter, final boolean exit) {
+            this.path = path;
+            this.attrs = attrs;
+            this.enter = enter;
+            this.exit = exit;
+            if (attrs instanceof UnixAttributes) {
+                final var unix = (UnixAttributes) attrs;
+                device = Long.toHexString(unix.getDevice());
+                inode = unix.getInode();
+            } else if (attrs != null) {
+                device = FileKeys.getDevice(attrs);
+                inode = FileKeys.getInode(attrs);
+            } else {
+                device = null;
+                inode = -1;
+            }
+        }
+    }
+
+    private final FileHasher hasher;
+    private final PathFilter filter;
+    private final FileTree tree;
+
+    /**
+     * Creates a walker.
+     *
+     * @param hasher the hasher of the files.
+     * @param filter the filter of the walked paths.
+     * @param tree the attributes to read.
+     */
+    InodeOrderWalker(final FileHasher hasher, final PathFilter filter, final FileTree tree) {
+        this.hasher = hasher;
+        this.filter = filter;
+        this.tree = tree;
+    }
+
+    private void flush(final List<Item> batch, final HashWriter writer) throws IOException {
+        final List<Item> files = new ArrayList<>();
+        for (final var item : batch) {
+            if (item.attrs != null) {
+                files.add(item);
+            }
+        }
+        files.sort(LAYOUT);
+        for (final var file : files) {
+            file.hash = RecursiveWalk.hashFile(hasher, file.path, file.attrs);
+        }
+        for (final var item : batch) {
+            final var path = item.path.toString();
+            if (item.enter) {
+                writer.enterDirectory(path);
+            } else if (item.exit) {
+                writer.exitDirectory(path);
+            } else {
+                writer.write(item.hash, path);
+            }
+        }
+        batch.clear();
+    }
+
+    @Override
+    public void walk(final Path root, final HashWriter writer) throws IOException {
+        final List<Item> batch = new ArrayList<>();
+        tree.walk(root, new SimpleFileVisitor<>() {
+            private void add(final Item item) throws IOException {
+                batch.add(item);
+                if (batch.size() == BATCH_SIZE) {
+                    flush(batch, writer);
+                }
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isDirectory() && filter.accepts(root, file)) {
+                    add(new Item(file, attrs, false, false));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
+                if (filter.accepts(root, file)) {
+                    RecursiveWalk.showOpenError(file.toString(), ex);
+                    add(new Item(file, null, false, false));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                if (filter.excludes(root, dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                add(new Item(dir, null, true, false));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException {
+                if (ex != null) {
+                    flush(batch, writer);
+                    throw ex;
+                }
+                add(new Item(dir, null, false, true));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        flush(batch, writer);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,275 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hashes every inode once, however many hard links to it are walked. Only the files with more than one link
+ * are tracked, by their devices and inode numbers, read with the other {@link UnixAttributes} by
+ * {@link FileTree#UNIX}; the first link to be hashed computes the hash, and the other ones, even if hashed
+ * concurrently, wait for it and reuse it. The inodes are kept in an open-addressing table of parallel
+ * primitive arrays, about 60 bytes per inode. The paths of the links are spilled to a temporary file
+ * as they are walked. When the groups are written, the links are sorted by inode to find the first path of every group
+ * and then by group, both within the budget of {@link SortingWriter}s.
+ */
+class LinkHasher implements FileHasher, Closeable {
+
+    private static final long SORT_BUDGET = 16L << 20;
+    private static final int SPILL_BUFFER_SIZE = 1 << 16;
+    private static final char SEPARATOR = '\0';
+    private static final int INODE_KEY_LENGTH = 32;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private static final byte EMPTY = 0;
+    private static final byte HASHING = 1;
+    private static final byte HASHED = 2;
+    private static final byte FAILED = 3;
+
+    @FunctionalInterface
+    private interface LinkVisitor {
+        void visit(int slot, String file) throws IOException;
+    }
+
+    private final FileHasher hasher;
+    private long[] devices = new long[INITIAL_CAPACITY];
+    private long[] inodes = new long[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int[] links = new int[INITIAL_CAPACITY];
+    private byte[] states = new byte[INITIAL_CAPACITY];
+    private int size;
+    private final Map<Integer, IOException> failures = new HashMap<>();
+    private Path spillFile;
+    private DataOutputStream spill;
+
+    LinkHasher(final FileHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    private static int mix(final long device, final long inode) {
+        long h = inode * 0x9e3779b97f4a7c15L + device;
+        h = (h ^ h >>> 32) * 0xd6e8feb86659fd93L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * Returns the slot of the inode or the empty slot where it should be inserted.
+     */
+    private int find(final long device, final long inode) {
+        final int mask = states.length - 1;
+        int slot = mix(device, inode) & mask;
+        while (states[slot] != EMPTY && (devices[slot] != device || inodes[slot] != inode)) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final var oldDevices = devices;
+        final var oldInodes = inodes;
+        final var oldHashes = hashes;
+        final var oldLinks = links;
+        final var oldStates = states;
+        final int capacity = 2 * oldStates.length;
+        devices = new long[capacity];
+        inodes = new long[capacity];
+        hashes = new long[capacity];
+        links = new int[capacity];
+        states = new byte[capacity];
+        final Map<Integer, IOException> oldFailures = new HashMap<>(failures);
+        failures.clear();
+        for (int i = 0; i < oldStates.length; ++i) {
+            if (oldStates[i] != EMPTY) {
+                final int slot = find(oldDevices[i], oldInodes[i]);
+                devices[slot] = oldDevices[i];
+                inodes[slot] = oldInodes[i];
+                hashes[slot] = oldHashes[i];
+                links[slot] = oldLinks[i];
+                states[slot] = oldStates[i];
+                if (oldFailures.containsKey(i)) {
+                    failures.put(slot, oldFailures.get(i));
+                }
+            }
+        }
+    }
+
+    private void addLink(final long device, final long inode, final String file) throws IOException {
+        if (spill == null) {
+            spillFile = Files.createTempFile("walk-links", ".tmp");
+            spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), SPILL_BUFFER_SIZE));
+        }
+        final var bytes = file.getBytes(StandardCharsets.UTF_8);
+        spill.writeLong(device);
+        spill.writeLong(inode);
+        spill.writeInt(bytes.length);
+        spill.write(bytes);
+    }
+
+    /**
+     * Records a link and returns whether it is the first one, which has to be hashed.
+     */
+    private synchronized boolean link(final long device, final long inode, final String file) throws IOException {
+        addLink(device, inode, file);
+        int slot = find(device, inode);
+        if (states[slot] != EMPTY) {
+            ++links[slot];
+            return false;
+        }
+        if (2 * (size + 1) > states.length) {
+            grow();
+            slot = find(device, inode);
+        }
+        ++size;
+        devices[slot] = device;
+        inodes[slot] = inode;
+        links[slot] = 1;
+        states[slot] = HASHING;
+        return true;
+    }
+
+    private synchronized void complete(final long device, final long inode, final long hash, final IOException failure) {
+        final int slot = find(device, inode);
+        hashes[slot] = hash;
+        states[slot] = failure == null ? HASHED : FAILED;
+        if (failure != null) {
+            failures.put(slot, failure);
+        }
+        notifyAll();
+    }
+
+    private synchronized long await(final long device, final long inode) throws IOException {
+        int slot;
+        while (states[slot = find(device, inode)] == HASHING) {
+            try {
+                wait();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (states[slot] == FAILED) {
+            throw failures.get(slot);
+        }
+        return hashes[slot];
+    }
+
+    @Override
+    public long hash(final Path file, final BasicFileAttributes attrs) throws IOException {
+        if (!(attrs instanceof UnixAttributes) || !attrs.isRegularFile() || ((UnixAttributes) attrs).getLinks() < 2) {
+            return hasher.hash(file, attrs);
+        }
+        final var unix = (UnixAttributes) attrs;
+        final long device = unix.getDevice();
+        final long inode = unix.getInode();
+        if (!link(device, inode, file.toString())) {
+            return await(device, inode);
+        }
+        try {
+            final long hash = hasher.hash(file, attrs);
+            complete(device, inode, hash, null);
+            return hash;
+        } catch (final IOException ex) {
+            complete(device, inode, 0, ex);
+            throw ex;
+        } catch (final RuntimeException ex) {
+            complete(device, inode, 0, new IOException(ex));
+            throw ex;
+        }
+    }
+
+    private void forEachLink(final LinkVisitor visitor) throws IOException {
+        try (final var is = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile),
+                SPILL_BUFFER_SIZE))) {
+            while (true) {
+                final int slot;
+                final byte[] bytes;
+                try {
+                    slot = find(is.readLong(), is.readLong());
+                    bytes = new byte[is.readInt()];
+                } catch (final EOFException ex) {
+                    return;
+                }
+                is.readFully(bytes);
+                if (links[slot] > 1 && states[slot] == HASHED) {
+                    visitor.visit(slot, new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the groups of links to the same inode which were walked, separated by empty lines and sorted by path.
+     * Inodes whose hashing failed are left out.
+     *
+     * @param writer the manifest writer.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeGroups(final ManifestOutput writer) throws IOException {
+        synchronized (this) {
+            if (spill == null) {
+                return;
+            }
+            spill.close();
+        }
+        try (final var byInode = new SortingWriter(SORT_BUDGET / 2);
+             final var byGroup = new SortingWriter(SORT_BUDGET / 2)) {
+            // The fixed-width inode keys keep the links to the same inode together, sorted by path
+            forEachLink((slot, file) -> byInode.write(hashes[slot],
+                    String.format("%016x%016x", devices[slot], inodes[slot]) + file));
+            byInode.writeTo(new HashWriter() {
+                private String inode;
+                private String first;
+
+                @Override
+                public void write(final long hash, final String key) throws IOException {
+                    final var file = key.substring(INODE_KEY_LENGTH);
+                    if (inode == null || !key.startsWith(inode)) {
+                        inode = key.substring(0, INODE_KEY_LENGTH);
+                        first = file;
+                    }
+                    // The paths cannot contain the separator, so the order of the keys is the order of the groups
+                    byGroup.write(hash, first + SEPARATOR + file);
+                }
+            });
+            byGroup.writeTo(new HashWriter() {
+                private String group;
+
+                @Override
+                public void write(final long hash, final String key) throws IOException {
+                    final int separator = key.indexOf(SEPARATOR);
+                    final var first = key.substring(0, separator);
+                    if (!first.equals(group)) {
+                        group = first;
+                        writer.newLine();
+                    }
+                    writer.write(hash, key.substring(separator + 1));
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes the temporary file of the links.
+     *
+     * @throws IOException if the file cannot be removed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts manifests between the text format of {@link RecursiveWalk} and the binary format
+ * of {@link BinaryManifestWriter}. Tagged lines, as written in watch mode, cannot be converted.
+ */
+public class ManifestConverter {
+
+    private static final String USAGE = "<to-binary|to-text> <input manifest> <output manifest>";
+
+    private static void showUsage() {
+        System.out.printf("Usage: %s %s%n", ManifestConverter.class.getName(), USAGE);
+    }
+
+    private static void toBinary(final Path input, final Path output) throws IOException {
+        try (final var reader = new TextManifestReader(input);
+             final var writer = new BinaryManifestWriter(output, 4 * reader.getDigits())) {
+            copy(reader, writer);
+        }
+    }
+
+    private static void toText(final Path input, final Path output) throws IOException {
+        try (final var reader = new BinaryManifestReader(input);
+             final var writer = new ManifestWriter(output, 4 * reader.getDigits())) {
+            copy(reader, writer);
+        }
+    }
+
+    private static void copy(final ManifestReader reader, final ManifestOutput writer) throws IOException {
+        ManifestReader.Entry entry;
+        while ((entry = reader.next()) != null) {
+            if (entry.isBreak()) {
+                writer.newLine();
+            } else {
+                writer.write(entry.hash, entry.file);
+            }
+        }
+    }
+
+    public static void main(final String[] args) {
+        if (args == null || args.length != 3 || args[0] == null || args[1] == null || args[2] == null) {
+            showUsage();
+            return;
+        }
+        final Path input;
+        final Path output;
+        try {
+            input = Paths.get(args[1]);
+            output = Paths.get(args[2]);
+        } catch (final InvalidPathException ex) {
+            System.out.println("Invalid path:");
+            System.out.println(ex.getMessage());
+            return;
+        }
+        try {
+            switch (args[0]) {
+                case "to-binary":
+                    toBinary(input, output);
+                    break;
+                case "to-text":
+                    toText(input, output);
+                    break;
+                default:
+                    showUsage();
+            }
+        } catch (final IOException ex) {
+            System.out.printf("An error occurred while trying to convert %s:%nSystem message: %s%n", input, ex.getMessage());
+        }
+    }
+
+}
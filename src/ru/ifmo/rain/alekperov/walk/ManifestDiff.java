@@ -0,0 +1,476 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares two manifests, text or binary, and reports the added ({@code +}), removed ({@code -})
+ * and changed ({@code ~}) paths, with the new hashes of the changed ones.
+ *
+ * <p>Manifests sorted by path, as written with {@code --sort}, are compared by a single merging pass.
+ * Otherwise the old manifest is loaded into a hash table and the new one is streamed against it;
+ * the new paths are added to the table as well. When the table would not fit into the memory budget,
+ * both manifests are first split by the hash of the path into temporary partitions which are joined
+ * independently and in parallel; the report is then the concatenation of the partial reports.
+ * The buffers of the partitions being written fit into the budget too, and at most {@value #MAX_PARTITIONS}
+ * partitions are written at once, so a partition which is still too large is split again by another hash,
+ * up to {@value #MAX_LEVELS} levels deep.
+ * Empty lines are ignored and only the first occurrence of a path is compared.
+ */
+public class ManifestDiff {
+
+    private static final String USAGE = "[--threads <number of joining threads>]"
+            + " [--memory <memory budget in bytes, with an optional k, m or g suffix>]"
+            + " <old manifest> <new manifest> <report>";
+
+    private static final long DEFAULT_BUDGET = 256L << 20;
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int TEXT_EXPANSION = 4;
+    private static final int BINARY_EXPANSION = 12;
+    private static final int PARTITION_EXPANSION = 6;
+    private static final int PARTITION_BUFFER_SIZE = 1 << 16;
+    private static final int MIN_PARTITION_BUFFER_SIZE = 1 << 12;
+    private static final int MAX_PARTITIONS = 256;
+    private static final int MAX_LEVELS = 4;
+
+    private final int threads;
+    private final long budget;
+    private final int maxPartitions;
+    private final int bufferSize;
+
+    private ManifestDiff(final int threads, final long budget) {
+        this.threads = threads;
+        this.budget = budget;
+        // Both manifests are split at once
+        maxPartitions = (int) Math.max(2, Math.min(MAX_PARTITIONS, budget / (2 * PARTITION_BUFFER_SIZE)));
+        bufferSize = (int) Math.max(MIN_PARTITION_BUFFER_SIZE,
+                Math.min(PARTITION_BUFFER_SIZE, budget / (2 * maxPartitions)));
+    }
+
+    /**
+     * Opens a manifest or a partition.
+     */
+    @FunctionalInterface
+    private interface Source {
+        ManifestReader open() throws IOException;
+    }
+
+    private static final class Counts {
+        private long added;
+        private long removed;
+        private long changed;
+
+        void add(final Counts other) {
+            added += other.added;
+            removed += other.removed;
+            changed += other.changed;
+        }
+    }
+
+    private static ManifestReader.Entry nextEntry(final ManifestReader reader) throws IOException {
+        ManifestReader.Entry entry;
+        do {
+            entry = reader.next();
+        } while (entry != null && entry.isBreak());
+        return entry;
+    }
+
+    private static void checkDigits(final ManifestReader oldReader, final ManifestReader newReader) throws IOException {
+        if (oldReader.getDigits() != newReader.getDigits()) {
+            throw new IOException("The manifests contain hashes of different widths");
+        }
+    }
+
+    /**
+     * Reads the entries of a manifest which is expected to be sorted, skipping repeated paths.
+     */
+    private static final class SortedCursor {
+        private final ManifestReader reader;
+        private ManifestReader.Entry current;
+        private boolean sorted = true;
+
+        SortedCursor(final ManifestReader reader) throws IOException {
+            this.reader = reader;
+            current = nextEntry(reader);
+        }
+
+        void advance() throws IOException {
+            final var previous = current;
+            do {
+                current = nextEntry(reader);
+            } while (current != null && current.file.equals(previous.file));
+            if (current != null && current.file.compareTo(previous.file) < 0) {
+                sorted = false;
+            }
+        }
+    }
+
+    private static boolean mayBeSorted(final ManifestReader reader) {
+        return !(reader instanceof BinaryManifestReader) || ((BinaryManifestReader) reader).isSorted();
+    }
+
+    /**
+     * Compares sorted manifests by merging them. Binary manifests record whether they are sorted,
+     * while text ones are only found out not to be in the middle of the merge.
+     *
+     * @return the counts, or {@code null} if one of the manifests is not sorted.
+     */
+    private static Counts merge(final Path oldFile, final Path newFile, final Path report) throws IOException {
+        try (final var oldReader = ManifestReader.open(oldFile);
+             final var newReader = ManifestReader.open(newFile)) {
+            checkDigits(oldReader, newReader);
+            if (!mayBeSorted(oldReader) || !mayBeSorted(newReader)) {
+                return null;
+            }
+            return merge(oldReader, newReader, report);
+        }
+    }
+
+    private static Counts merge(final ManifestReader oldReader, final ManifestReader newReader, final Path report)
+            throws IOException {
+        try (final var writer = new ManifestWriter(report, 4 * newReader.getDigits())) {
+            final var counts = new Counts();
+            final var previous = new SortedCursor(oldReader);
+            final var current = new SortedCursor(newReader);
+            while (previous.current != null || current.current != null) {
+                if (!previous.sorted || !current.sorted) {
+                    return null;
+                }
+                final int order = previous.current == null ? 1
+                        : current.current == null ? -1 : previous.current.file.compareTo(current.current.file);
+                if (order < 0) {
+                    writer.write('-', previous.current.hash, previous.current.file);
+                    ++counts.removed;
+                    previous.advance();
+                } else if (order > 0) {
+                    writer.write('+', current.current.hash, current.current.file);
+                    ++counts.added;
+                    current.advance();
+                } else {
+                    if (previous.current.hash != current.current.hash) {
+                        writer.write('~', current.current.hash, current.current.file);
+                        ++counts.changed;
+                    }
+                    previous.advance();
+                    current.advance();
+                }
+            }
+            return counts;
+        }
+    }
+
+    private static final class Slot {
+        private final long hash;
+        private boolean seen;
+
+        Slot(final long hash, final boolean seen) {
+            this.hash = hash;
+            this.seen = seen;
+        }
+    }
+
+    /**
+     * Joins the manifests in memory. The paths of the new manifest which are not in the old one are kept too,
+     * to report each of them once, so the table may hold the entries of both manifests.
+     */
+    private static Counts join(final ManifestReader oldReader, final ManifestReader newReader,
+                               final ManifestWriter writer) throws IOException {
+        final Map<String, Slot> previous = new LinkedHashMap<>();
+        ManifestReader.Entry entry;
+        while ((entry = nextEntry(oldReader)) != null) {
+            previous.putIfAbsent(entry.file, new Slot(entry.hash, false));
+        }
+        final var counts = new Counts();
+        while ((entry = nextEntry(newReader)) != null) {
+            final var slot = previous.get(entry.file);
+            if (slot == null) {
+                previous.put(entry.file, new Slot(entry.hash, true));
+                writer.write('+', entry.hash, entry.file);
+                ++counts.added;
+            } else if (!slot.seen) {
+                slot.seen = true;
+                if (slot.hash != entry.hash) {
+                    writer.write('~', entry.hash, entry.file);
+                    ++counts.changed;
+                }
+            }
+        }
+        for (final var e : previous.entrySet()) {
+            if (!e.getValue().seen) {
+                writer.write('-', e.getValue().hash, e.getKey());
+                ++counts.removed;
+            }
+        }
+        return counts;
+    }
+
+    private static long estimateMemory(final Path file) throws IOException {
+        try (final var reader = ManifestReader.open(file)) {
+            return Files.size(file) * (reader instanceof BinaryManifestReader ? BINARY_EXPANSION : TEXT_EXPANSION);
+        }
+    }
+
+    /**
+     * Reads a partition written by {@link #split}.
+     */
+    private static final class PartitionReader implements ManifestReader {
+        private final DataInputStream is;
+        private final int digits;
+
+        PartitionReader(final Path file, final int digits, final int bufferSize) throws IOException {
+            is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), bufferSize));
+            this.digits = digits;
+        }
+
+        @Override
+        public int getDigits() {
+            return digits;
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            try {
+                final long hash = is.readLong();
+                final var bytes = new byte[is.readInt()];
+                is.readFully(bytes);
+                return new Entry(hash, new String(bytes, StandardCharsets.UTF_8));
+            } catch (final EOFException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            is.close();
+        }
+    }
+
+    /**
+     * Returns the partition of the path, with a different hash at every level of partitioning.
+     */
+    private static int partitionOf(final String file, final int partitions, final int level) {
+        int hash = file.hashCode() + level * 0x9e3779b9;
+        hash = (hash ^ hash >>> 16) * 0x85ebca6b;
+        hash = (hash ^ hash >>> 13) * 0xc2b2ae35;
+        return Math.floorMod(hash ^ hash >>> 16, partitions);
+    }
+
+    private void split(final Source source, final List<Path> partitions, final int level) throws IOException {
+        final List<DataOutputStream> outputs = new ArrayList<>(partitions.size());
+        try (final var reader = source.open()) {
+            for (final var partition : partitions) {
+                outputs.add(new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(partition), bufferSize)));
+            }
+            ManifestReader.Entry entry;
+            while ((entry = nextEntry(reader)) != null) {
+                final var os = outputs.get(partitionOf(entry.file, partitions.size(), level));
+                final var bytes = entry.file.getBytes(StandardCharsets.UTF_8);
+                os.writeLong(entry.hash);
+                os.writeInt(bytes.length);
+                os.write(bytes);
+            }
+        } finally {
+            IOException failure = null;
+            for (final var os : outputs) {
+                try {
+                    os.close();
+                } catch (final IOException ex) {
+                    failure = ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static long partitionMemory(final Path oldPart, final Path newPart) throws IOException {
+        return (Files.size(oldPart) + Files.size(newPart)) * PARTITION_EXPANSION;
+    }
+
+    private static <T> T get(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private Counts hashJoin(final Path oldFile, final Path newFile, final Path report) throws IOException {
+        final int digits;
+        try (final var oldReader = ManifestReader.open(oldFile);
+             final var newReader = ManifestReader.open(newFile)) {
+            checkDigits(oldReader, newReader);
+            digits = newReader.getDigits();
+            final long memory = estimateMemory(oldFile) + estimateMemory(newFile) + ENTRY_OVERHEAD;
+            if (memory <= budget) {
+                try (final var writer = new ManifestWriter(report, 4 * digits)) {
+                    return join(oldReader, newReader, writer);
+                }
+            }
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return partitionedJoin(() -> ManifestReader.open(oldFile), () -> ManifestReader.open(newFile),
+                    estimateMemory(oldFile) + estimateMemory(newFile), digits, report, 0, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits both manifests into partitions and joins them, in parallel where a partition fits
+     * into its share of the budget and by splitting it further otherwise.
+     */
+    private Counts partitionedJoin(final Source oldSource, final Source newSource, final long memory, final int digits,
+                                   final Path report, final int level, final ExecutorService executor)
+            throws IOException {
+        final int count = (int) Math.min(maxPartitions, Math.max(threads, memory * threads / budget + 1));
+        final List<Path> temporary = new ArrayList<>();
+        try {
+            final List<Path> oldParts = new ArrayList<>();
+            final List<Path> newParts = new ArrayList<>();
+            final List<Path> reports = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                for (final var parts : List.of(oldParts, newParts, reports)) {
+                    final var file = Files.createTempFile("walk-diff", ".tmp");
+                    temporary.add(file);
+                    parts.add(file);
+                }
+            }
+            final var oldSplit = executor.submit(() -> {
+                split(oldSource, oldParts, level);
+                return null;
+            });
+            split(newSource, newParts, level);
+            get(oldSplit);
+
+            final List<Future<Counts>> joins = new ArrayList<>(count);
+            final List<Integer> large = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                final int partition = i;
+                if (partitionMemory(oldParts.get(i), newParts.get(i)) * threads > budget && level + 1 < MAX_LEVELS) {
+                    joins.add(null);
+                    large.add(i);
+                    continue;
+                }
+                joins.add(executor.submit(() -> {
+                    try (final var oldReader = new PartitionReader(oldParts.get(partition), digits, bufferSize);
+                         final var newReader = new PartitionReader(newParts.get(partition), digits, bufferSize);
+                         final var writer = new ManifestWriter(reports.get(partition), 4 * digits)) {
+                        return join(oldReader, newReader, writer);
+                    }
+                }));
+            }
+            final var counts = new Counts();
+            for (final var join : joins) {
+                if (join != null) {
+                    counts.add(get(join));
+                }
+            }
+            // Split further one at a time, after the parallel joins have released their memory
+            for (final int i : large) {
+                final var oldPart = oldParts.get(i);
+                final var newPart = newParts.get(i);
+                counts.add(partitionedJoin(() -> new PartitionReader(oldPart, digits, bufferSize),
+                        () -> new PartitionReader(newPart, digits, bufferSize),
+                        partitionMemory(oldPart, newPart), digits, reports.get(i), level + 1, executor));
+                Files.delete(oldPart);
+                Files.delete(newPart);
+            }
+            try (final var output = FileChannel.open(report, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (final var partial : reports) {
+                    try (final var input = FileChannel.open(partial)) {
+                        final long size = input.size();
+                        for (long position = 0; position < size; ) {
+                            position += input.transferTo(position, size - position, output);
+                        }
+                    }
+                }
+            }
+            return counts;
+        } finally {
+            for (final var file : temporary) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private Counts diff(final Path oldFile, final Path newFile, final Path report) throws IOException {
+        final var counts = merge(oldFile, newFile, report);
+        return counts != null ? counts : hashJoin(oldFile, newFile, report);
+    }
+
+    public static void main(final String[] args) {
+        if (args == null || args.length < 3 || Arrays.asList(args).contains(null)) {
+            System.out.printf("Usage: %s %s%n", ManifestDiff.class.getName(), USAGE);
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        long budget = DEFAULT_BUDGET;
+        final Path oldFile;
+        final Path newFile;
+        final Path report;
+        try {
+            int pos = 0;
+            while (pos < args.length - 3) {
+                final var option = args[pos++];
+                if (pos == args.length - 3) {
+                    throw new IllegalArgumentException("Missing value of " + option);
+                }
+                if ("--threads".equals(option)) {
+                    threads = WalkOptions.parsePositive("number of threads", args[pos++]);
+                } else if ("--memory".equals(option)) {
+                    budget = WalkOptions.parseSize("memory budget", args[pos++]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+            if (pos != args.length - 3) {
+                throw new IllegalArgumentException("Expected old and new manifests and a report");
+            }
+            oldFile = Paths.get(args[pos]);
+            newFile = Paths.get(args[pos + 1]);
+            report = Paths.get(args[pos + 2]);
+        } catch (final InvalidPathException ex) {
+            System.out.println("Invalid path:");
+            System.out.println(ex.getMessage());
+            return;
+        } catch (final IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.out.printf("Usage: %s %s%n", ManifestDiff.class.getName(), USAGE);
+            return;
+        }
+        try {
+            final var counts = new ManifestDiff(threads, budget).diff(oldFile, newFile, report);
+            System.out.printf("%d added, %d removed, %d changed%n", counts.added, counts.removed, counts.changed);
+        } catch (final IOException ex) {
+            System.out.printf("An error occurred while trying to compare %s and %s:%nSystem message: %s%n",
+                    oldFile, newFile, ex.getMessage());
+        }
+    }
+
+}
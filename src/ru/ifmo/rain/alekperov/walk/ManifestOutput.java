@@ -0,0 +1,18 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A manifest being written: a sequence of file hashes, divided into sections by empty lines.
+ */
+interface ManifestOutput extends HashWriter, Closeable {
+
+    /**
+     * Writes an empty line, which separates sections of the manifest.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void newLine() throws IOException;
+
+}
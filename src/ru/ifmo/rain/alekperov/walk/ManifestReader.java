@@ -0,0 +1,61 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sequential reader of a manifest in either format.
+ */
+interface ManifestReader extends Closeable {
+
+    /**
+     * A record of a manifest: either an entry or an empty line.
+     */
+    final class Entry {
+        final long hash;
+        final String file;
+
+        Entry(final long hash, final String file) {
+            this.hash = hash;
+            this.file = file;
+        }
+
+        boolean isBreak() {
+            return file == null;
+        }
+    }
+
+    /**
+     * Returns the number of hexadecimal digits of the hashes in the text form.
+     */
+    int getDigits();
+
+    /**
+     * Reads the next record.
+     *
+     * @return the record, or {@code null} at the end of the manifest.
+     * @throws IOException if the manifest cannot be read or is malformed.
+     */
+    Entry next() throws IOException;
+
+    /**
+     * Opens a manifest, telling the binary format from the text one by the magic number.
+     *
+     * @param file the manifest file.
+     * @return the reader.
+     * @throws IOException if the file cannot be opened.
+     */
+    static ManifestReader open(final Path file) throws IOException {
+        final var magic = ByteBuffer.allocate(Integer.BYTES);
+        try (final InputStream is = Files.newInputStream(file)) {
+            magic.limit(is.readNBytes(magic.array(), 0, Integer.BYTES));
+        }
+        return magic.remaining() == Integer.BYTES && magic.getInt() == BinaryManifestWriter.MAGIC
+                ? new BinaryManifestReader(file) : new TextManifestReader(file);
+    }
+
+}
@@ -0,0 +1,179 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes manifest lines consisting of a hash in hexadecimal, a space and a path.
+ * Lines are formatted and UTF-8 encoded directly into a reusable buffer which is written to the file
+ * in large blocks, so writing an entry allocates nothing.
+ */
+class ManifestWriter implements ManifestOutput {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final int digits;
+    private byte[] bytes = new byte[BUFFER_SIZE];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int size;
+
+    /**
+     * Creates or truncates the file and opens it for writing.
+     *
+     * @param file the manifest file.
+     * @param bits the number of significant bits in the hashes.
+     * @throws IOException if the file cannot be opened.
+     */
+    ManifestWriter(final Path file, final int bits) throws IOException {
+        this(file, bits, 0);
+    }
+
+    /**
+     * Opens the file for writing after its first {@code offset} bytes, discarding the rest.
+     *
+     * @param file the manifest file.
+     * @param bits the number of significant bits in the hashes.
+     * @param offset the number of bytes to keep.
+     * @throws IOException if the file cannot be opened or is shorter than {@code offset}.
+     */
+    ManifestWriter(final Path file, final int bits, final long offset) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < offset) {
+                throw new IOException("The manifest is shorter than " + offset + " bytes");
+            }
+            channel.truncate(offset);
+            channel.position(offset);
+        } catch (final IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        digits = (bits + 3) / 4;
+    }
+
+    private void reserve(final int length) throws IOException {
+        if (size + length > bytes.length) {
+            flush();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+                buffer = ByteBuffer.wrap(bytes);
+            }
+        }
+    }
+
+    private void putHex(final long hash) {
+        for (int i = digits - 1; i >= 0; --i) {
+            bytes[size + i] = HEX_DIGITS[(int) (hash >>> 4 * (digits - 1 - i)) & 0xf];
+        }
+        size += digits;
+    }
+
+    private void putUtf8(final String s) throws MalformedInputException {
+        final int length = s.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xc0 | c >> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (!Character.isHighSurrogate(c) || i + 1 == length || !Character.isLowSurrogate(s.charAt(i + 1))) {
+                    throw new MalformedInputException(1);
+                }
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                bytes[size++] = (byte) (0xf0 | cp >> 18);
+                bytes[size++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                bytes[size++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                bytes[size++] = (byte) (0x80 | cp & 0x3f);
+            } else {
+                bytes[size++] = (byte) (0xe0 | c >> 12);
+                bytes[size++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[size++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    @Override
+    public void write(final long hash, final String file) throws IOException {
+        reserve(digits + 1 + 3 * file.length() + LINE_SEPARATOR.length);
+        putEntry(size, hash, file);
+    }
+
+    /**
+     * Writes a line prefixed with a one-character tag, such as a change kind, and a space.
+     *
+     * @param tag the ASCII tag.
+     * @param hash the hash of the file.
+     * @param file the path of the file.
+     * @throws IOException if the path is malformed or an I/O error occurs.
+     */
+    void write(final char tag, final long hash, final String file) throws IOException {
+        reserve(2 + digits + 1 + 3 * file.length() + LINE_SEPARATOR.length);
+        final int start = size;
+        bytes[size++] = (byte) tag;
+        bytes[size++] = ' ';
+        putEntry(start, hash, file);
+    }
+
+    private void putEntry(final int start, final long hash, final String file) throws MalformedInputException {
+        putHex(hash);
+        bytes[size++] = ' ';
+        try {
+            putUtf8(file);
+        } catch (final MalformedInputException ex) {
+            size = start;
+            throw ex;
+        }
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, size, LINE_SEPARATOR.length);
+        size += LINE_SEPARATOR.length;
+    }
+
+    @Override
+    public void newLine() throws IOException {
+        reserve(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, size, LINE_SEPARATOR.length);
+        size += LINE_SEPARATOR.length;
+    }
+
+    /**
+     * Writes the buffered lines to the file.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void flush() throws IOException {
+        buffer.clear().limit(size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        size = 0;
+    }
+
+    /**
+     * Flushes the buffered lines and forces them to the storage device.
+     *
+     * @return the length of the written manifest.
+     * @throws IOException if an I/O error occurs.
+     */
+    long sync() throws IOException {
+        flush();
+        channel.force(false);
+        return channel.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            flush();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Computes a digest of every walked directory from the names and the hashes (or digests) of its children,
+ * taken in the order of names, so that two replicas can be compared by descending only into the directories
+ * whose digests differ. The file hashes are passed through unchanged.
+ */
+class MerkleWriter implements HashWriter {
+
+    private static final class Child {
+        private final String name;
+        private final long hash;
+
+        Child(final String name, final long hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+    }
+
+    private final HashWriter writer;
+    private final HashFunction function;
+    private final Deque<List<Child>> directories = new ArrayDeque<>();
+    private final List<Child> digests = new ArrayList<>();
+
+    MerkleWriter(final HashWriter writer, final HashFunction function) {
+        this.writer = writer;
+        this.function = function;
+    }
+
+    private static String getName(final String path) {
+        return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+    }
+
+    private void addChild(final String path, final long hash) {
+        final var parent = directories.peek();
+        if (parent != null) {
+            parent.add(new Child(getName(path), hash));
+        }
+    }
+
+    @Override
+    public void write(final long hash, final String file) throws IOException {
+        addChild(file, hash);
+        writer.write(hash, file);
+    }
+
+    @Override
+    public void enterDirectory(final String dir) throws IOException {
+        directories.push(new ArrayList<>());
+        writer.enterDirectory(dir);
+    }
+
+    @Override
+    public void exitDirectory(final String dir) throws IOException {
+        final var children = directories.pop();
+        children.sort(Comparator.comparing(child -> child.name));
+        final var checksum = function.newChecksum();
+        final int hashBytes = (function.getBits() + 7) / 8;
+        for (final var child : children) {
+            final var name = child.name.getBytes(StandardCharsets.UTF_8);
+            checksum.update(name, 0, name.length);
+            checksum.update(0);
+            for (int i = hashBytes - 1; i >= 0; --i) {
+                checksum.update((int) (child.hash >>> 8 * i));
+            }
+        }
+        final long digest = checksum.getValue();
+        addChild(dir, digest);
+        digests.add(new Child(dir, digest));
+        writer.exitDirectory(dir);
+    }
+
+    /**
+     * Writes the section of directory digests, separated from the file hashes by an empty line,
+     * in the order in which the directories were completed.
+     *
+     * @param writer the manifest writer.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeDigests(final ManifestOutput writer) throws IOException {
+        writer.newLine();
+        for (final var digest : digests) {
+            writer.write(digest.hash, digest.name);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Walks file trees using a work-stealing pool: directories are listed and files are hashed concurrently,
+ * while the results are reported in the same order as {@link Files#walkFileTree(Path, FileVisitor)} visits them.
+ * At most {@value #WINDOW} entries are computed ahead of the writer; the rest are computed when they are reported.
+ */
+class ParallelWalker implements Walker {
+
+    private static final int WINDOW = 1 << 12;
+
+    private final ForkJoinPool pool;
+    private final FileHasher hasher;
+    private final PathFilter filter;
+    private final FileTree tree;
+
+    ParallelWalker(final int threads, final FileHasher hasher, final PathFilter filter, final FileTree tree) {
+        pool = new ForkJoinPool(threads);
+        this.hasher = hasher;
+        this.filter = filter;
+        this.tree = tree;
+    }
+
+    private final class Entry extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path path;
+        private final Semaphore window;
+        private boolean forked;
+        private List<Entry> children;
+        private IOException iterationException;
+        private long hash;
+        private boolean filtered;
+
+        Entry(final Path root, final Path path, final Semaphore window) {
+            this.root = root;
+            this.path = path;
+            this.window = window;
+        }
+
+        @Override
+        protected void compute() {
+            final BasicFileAttributes attrs;
+            try {
+                attrs = tree.readAttributes(path);
+            } catch (final IOException ex) {
+                filtered = !filter.accepts(root, path);
+                if (!filtered) {
+                    RecursiveWalk.showOpenError(path.toString(), ex);
+                }
+                return;
+            }
+            if (!attrs.isDirectory()) {
+                filtered = !filter.accepts(root, path);
+                if (!filtered) {
+                    hash = RecursiveWalk.hashFile(hasher, path, attrs);
+                }
+                return;
+            }
+            final DirectoryStream<Path> stream;
+            try {
+                stream = Files.newDirectoryStream(path);
+            } catch (final IOException ex) {
+                filtered = !filter.accepts(root, path);
+                if (!filtered) {
+                    RecursiveWalk.showOpenError(path.toString(), ex);
+                }
+                return;
+            }
+            children = new ArrayList<>();
+            try (stream) {
+                for (final var child : stream) {
+                    if (filter.excludes(root, child)) {
+                        continue;
+                    }
+                    final var entry = new Entry(root, child, window);
+                    children.add(entry);
+                    if (window.tryAcquire()) {
+                        entry.forked = true;
+                        entry.fork();
+                    }
+                }
+            } catch (final DirectoryIteratorException ex) {
+                iterationException = ex.getCause();
+            } catch (final IOException ex) {
+                iterationException = ex;
+            }
+        }
+
+    }
+
+    private void report(final Entry entry, final HashWriter writer) throws IOException {
+        if (entry.forked) {
+            entry.join();
+            entry.window.release();
+        } else {
+            pool.invoke(entry);
+        }
+        if (entry.filtered) {
+            return;
+        }
+        if (entry.children == null) {
+            writer.write(entry.hash, entry.path.toString());
+            return;
+        }
+        final var children = entry.children;
+        entry.children = null;
+        final var dir = entry.path.toString();
+        writer.enterDirectory(dir);
+        for (final var child : children) {
+            report(child, writer);
+        }
+        if (entry.iterationException != null) {
+            throw entry.iterationException;
+        }
+        writer.exitDirectory(dir);
+    }
+
+    @Override
+    public void walk(final Path root, final HashWriter writer) throws IOException {
+        report(new Entry(root, root, new Semaphore(WINDOW)), writer);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+}
@@ -0,0 +1,167 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Include and exclude rules for the walked paths. A rule is a glob or, with the {@code regex:} prefix,
+ * a regular expression, matched against the path relative to the walked root with {@code /} as the separator.
+ * A glob without a {@code /} is matched against the last name only, so {@code node_modules} excludes
+ * every directory of that name. Excluded directories are not descended into; include rules only apply to files.
+ * The rules of each kind are compiled into a single alternation, so a path is checked by one regex match.
+ */
+class PathFilter {
+
+    static final PathFilter ALL = new PathFilter(null, null);
+
+    private static final String REGEX_PREFIX = "regex:";
+
+    private final Pattern includes;
+    private final Pattern excludes;
+
+    private PathFilter(final Pattern includes, final Pattern excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Compiles the rules.
+     *
+     * @param includes the include rules, empty to include every file.
+     * @param excludes the exclude rules.
+     * @return the filter.
+     * @throws IllegalArgumentException if a rule is malformed.
+     */
+    static PathFilter compile(final List<String> includes, final List<String> excludes) {
+        return includes.isEmpty() && excludes.isEmpty() ? ALL : new PathFilter(combine(includes), combine(excludes));
+    }
+
+    private static Pattern combine(final List<String> rules) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+        for (final var rule : rules) {
+            if (rule.startsWith(REGEX_PREFIX)) {
+                // Reports the syntax errors of every rule by itself
+                Pattern.compile(rule.substring(REGEX_PREFIX.length()));
+            }
+        }
+        return Pattern.compile(rules.stream().map(PathFilter::toRegex).collect(Collectors.joining("|")));
+    }
+
+    private static String toRegex(final String rule) {
+        if (rule.startsWith(REGEX_PREFIX)) {
+            return "(?:" + rule.substring(REGEX_PREFIX.length()) + ")";
+        }
+        final var glob = rule.startsWith("/") ? rule.substring(1) : rule;
+        final var regex = globToRegex(glob);
+        return rule.indexOf('/') == -1 ? "(?:(?:.*/)?" + regex + ")" : "(?:" + regex + ")";
+    }
+
+    private static void appendLiteral(final StringBuilder regex, final char c) {
+        if ("\\.[]{}()<>*+-=!?^$|".indexOf(c) != -1) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
+    private static String globToRegex(final String glob) {
+        final var regex = new StringBuilder();
+        boolean inClass = false;
+        int groups = 0;
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                } else if (c == '\\' || c == '[' || c == '&' || c == '^' && glob.charAt(i - 1) != '[') {
+                    regex.append('\\');
+                }
+                regex.append(c);
+                continue;
+            }
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        ++i;
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            // "**/" also matches no directories at all
+                            ++i;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    inClass = true;
+                    regex.append('[');
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+                        ++i;
+                        regex.append('^');
+                    }
+                    break;
+                case '{':
+                    ++groups;
+                    regex.append("(?:");
+                    break;
+                case '}':
+                    if (groups == 0) {
+                        throw new IllegalArgumentException("Unmatched } in " + glob);
+                    }
+                    --groups;
+                    regex.append(')');
+                    break;
+                case ',':
+                    regex.append(groups > 0 ? "|" : ",");
+                    break;
+                case '\\':
+                    if (++i == glob.length()) {
+                        throw new IllegalArgumentException("Trailing \\ in " + glob);
+                    }
+                    appendLiteral(regex, glob.charAt(i));
+                    break;
+                default:
+                    appendLiteral(regex, c);
+            }
+        }
+        if (inClass || groups > 0) {
+            throw new IllegalArgumentException("Unclosed [ or { in " + glob);
+        }
+        return regex.toString();
+    }
+
+    private static String relativize(final Path root, final Path path) {
+        final var relative = root.relativize(path).toString();
+        return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Tells whether the path, a file or a directory under the root, is excluded. The root itself never is.
+     */
+    boolean excludes(final Path root, final Path path) {
+        return excludes != null && !path.equals(root) && excludes.matcher(relativize(root, path)).matches();
+    }
+
+    /**
+     * Tells whether the file under the root is walked, that is, included and not excluded.
+     * A root given as a file is always walked.
+     */
+    boolean accepts(final Path root, final Path file) {
+        if (this == ALL || file.equals(root)) {
+            return true;
+        }
+        final var relative = relativize(root, file);
+        return (includes == null || includes.matcher(relative).matches())
+                && (excludes == null || !excludes.matcher(relative).matches());
+    }
+
+}
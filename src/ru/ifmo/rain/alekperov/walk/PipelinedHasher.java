@@ -0,0 +1,284 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Hashes files while reading them ahead asynchronously: up to the configured number of chunks are being read
+ * while the previous ones are hashed, so the I/O latency overlaps with the hashing.
+ * The depth can be configured separately for the files under different paths (for example, mount points).
+ * Chunk buffers are taken from a bounded pool shared by all the hashing threads.
+ *
+ * <p>A walker which knows the next files can also {@link #readAhead} them, so the reads cross file boundaries:
+ * the first chunks of up to the depth of the next files are read while the current one is hashed,
+ * which is what makes read-ahead work for trees of files smaller than a chunk.
+ */
+class PipelinedHasher implements FileHasher {
+
+    private static final int CHUNK_SIZE = 1 << 18;
+
+    private final HashFunction function;
+    private final int depth;
+    private final Map<Path, Integer> depths;
+    private final BlockingQueue<ByteBuffer> pool;
+    private final Deque<Ahead> ahead = new ArrayDeque<>();
+
+    /**
+     * Creates a hasher.
+     *
+     * @param function the hash function to compute.
+     * @param depth the number of chunks to read ahead by default.
+     * @param depths the numbers of chunks to read ahead for the files under the given absolute paths.
+     * @param threads the number of threads which will use the hasher concurrently.
+     */
+    PipelinedHasher(final HashFunction function, final int depth, final Map<Path, Integer> depths, final int threads) {
+        this.function = function;
+        this.depth = depth;
+        this.depths = depths;
+        final int maxDepth = depths.values().stream().mapToInt(Integer::intValue).reduce(depth, Math::max);
+        pool = new ArrayBlockingQueue<>(maxDepth * threads);
+        for (int i = maxDepth * threads; i > 0; --i) {
+            pool.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        }
+    }
+
+    private int getDepth(final Path file) {
+        int result = depth;
+        int longest = -1;
+        for (final var e : depths.entrySet()) {
+            final var root = e.getKey();
+            if (root.getNameCount() > longest && file.startsWith(root)) {
+                longest = root.getNameCount();
+                result = e.getValue();
+            }
+        }
+        return result;
+    }
+
+    private static final class Slot {
+        private final ByteBuffer buffer;
+        private long position;
+        private Future<Integer> read;
+
+        Slot(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void start(final AsynchronousFileChannel channel, final long position) {
+            this.position = position;
+            buffer.clear();
+            read = channel.read(buffer, position);
+        }
+
+        /**
+         * Waits until the chunk is filled and returns {@code false} if the end of file was reached.
+         */
+        boolean await(final AsynchronousFileChannel channel) throws IOException {
+            while (true) {
+                final int count = get(read);
+                if (count == -1 || !buffer.hasRemaining()) {
+                    buffer.flip();
+                    return count != -1;
+                }
+                read = channel.read(buffer, position + buffer.position());
+            }
+        }
+
+        void finish() {
+            if (read != null) {
+                try {
+                    get(read);
+                } catch (final IOException ignored) {
+                    // The result is not needed anymore.
+                }
+            }
+        }
+    }
+
+    /**
+     * The first chunk of a file which is read ahead of its hashing.
+     */
+    private static final class Ahead {
+        private final Path file;
+        private final AsynchronousFileChannel channel;
+        private final Slot slot;
+
+        Ahead(final Path file, final AsynchronousFileChannel channel, final Slot slot) {
+            this.file = file;
+            this.channel = channel;
+            this.slot = slot;
+        }
+    }
+
+    private static int get(final Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Takes a free buffer or, if there is none, drops the file read ahead last and takes its buffer.
+     */
+    private synchronized ByteBuffer reclaim() {
+        final var buffer = pool.poll();
+        if (buffer != null || ahead.isEmpty()) {
+            return buffer;
+        }
+        drop(ahead.pollLast());
+        return pool.poll();
+    }
+
+    /**
+     * Takes up to the given number of buffers, waiting for the first one if {@code wait} is set.
+     * The reads ahead may hold all the buffers, so the last of them gives its buffer up rather than being waited for.
+     */
+    private List<Slot> acquire(final boolean wait, final int count) throws IOException {
+        final List<Slot> slots = new ArrayList<>(count);
+        if (wait) {
+            try {
+                final var buffer = reclaim();
+                slots.add(new Slot(buffer != null ? buffer : pool.take()));
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        for (ByteBuffer buffer; slots.size() < count && (buffer = pool.poll()) != null; ) {
+            slots.add(new Slot(buffer));
+        }
+        return slots;
+    }
+
+    /**
+     * Starts reading the first chunk of a file which is going to be hashed after the ones read ahead before it,
+     * unless as many chunks as the read-ahead depth of the file are already being read ahead.
+     * A file which is not hashed in its turn, for example because its hash was cached, is dropped
+     * when a later one is hashed.
+     * If the file is not read ahead, the later ones must not be either.
+     *
+     * @param file the file to read.
+     * @return {@code false} if the file has not been read ahead because the depth is exhausted.
+     */
+    synchronized boolean readAhead(final Path file) {
+        if (ahead.size() >= getDepth(file.toAbsolutePath())) {
+            return false;
+        }
+        final var buffer = pool.poll();
+        if (buffer == null) {
+            return false;
+        }
+        final AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+        } catch (final IOException ex) {
+            // The error is reported when the file is hashed
+            pool.add(buffer);
+            return true;
+        }
+        final var slot = new Slot(buffer);
+        slot.start(channel, 0);
+        ahead.add(new Ahead(file, channel, slot));
+        return true;
+    }
+
+    /**
+     * Drops the files read ahead which have not been hashed.
+     */
+    synchronized void cancelReadAhead() {
+        while (!ahead.isEmpty()) {
+            drop(ahead.poll());
+        }
+    }
+
+    private void drop(final Ahead dropped) {
+        dropped.slot.finish();
+        try {
+            dropped.channel.close();
+        } catch (final IOException ignored) {
+            // Nothing was written.
+        }
+        pool.add(dropped.slot.buffer);
+    }
+
+    /**
+     * Returns the reads of a file started ahead, or {@code null} if it has not been read ahead.
+     * The files are hashed in the order they have been read ahead, so the ones before it are not going to be hashed,
+     * while the ones after it are kept even if it has not been read ahead.
+     */
+    private synchronized Ahead takeAhead(final Path file) {
+        if (ahead.stream().noneMatch(started -> started.file.equals(file))) {
+            return null;
+        }
+        while (true) {
+            final var first = ahead.poll();
+            if (first.file.equals(file)) {
+                return first;
+            }
+            drop(first);
+        }
+    }
+
+    @Override
+    public long hash(final Path file, final BasicFileAttributes attrs) throws IOException {
+        final var checksum = function.newChecksum();
+        final int depth = getDepth(file.toAbsolutePath());
+        final var started = takeAhead(file);
+        final List<Slot> slots = new ArrayList<>(depth);
+        try (final var channel = started != null ? started.channel
+                : AsynchronousFileChannel.open(file, StandardOpenOption.READ)) {
+            try {
+                long position = 0;
+                if (started != null) {
+                    slots.add(started.slot);
+                    position = CHUNK_SIZE;
+                }
+                // A file read ahead whole needs no more chunks
+                if (started == null || channel.size() > CHUNK_SIZE) {
+                    for (final var slot : acquire(started == null, depth - slots.size())) {
+                        slots.add(slot);
+                        slot.start(channel, position);
+                        position += CHUNK_SIZE;
+                    }
+                }
+                for (int i = 0; ; i = (i + 1) % slots.size()) {
+                    final var slot = slots.get(i);
+                    final boolean more = slot.await(channel);
+                    checksum.update(slot.buffer);
+                    if (!more) {
+                        break;
+                    }
+                    slot.start(channel, position);
+                    position += CHUNK_SIZE;
+                }
+            } finally {
+                slots.forEach(Slot::finish);
+            }
+        } finally {
+            slots.forEach(slot -> pool.add(slot.buffer));
+        }
+        return checksum.getValue();
+    }
+
+}
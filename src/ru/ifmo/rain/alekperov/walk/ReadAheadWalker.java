@@ -0,0 +1,169 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Predicate;
+
+/**
+ * Walks the tree up to {@value #WINDOW} entries ahead of the hashing and lets the {@link PipelinedHasher}
+ * {@link PipelinedHasher#readAhead read ahead} the files of the window, so the reads of the next files
+ * overlap with the hashing of the current one. The files are hashed on the calling thread, in the walking order.
+ */
+class ReadAheadWalker implements Walker {
+
+    private static final int WINDOW = 1 << 10;
+
+    /**
+     * A file to hash or, if {@code attrs} is {@code null}, a directory boundary or a file which could not be visited.
+     */
+    private static final class Item {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private final boolean enter;
+        private final boolean exit;
+
+        Item(final Path path, final BasicFileAttributes attrs, final boolean enter, final boolean exit) {
+            this.path = path;
+            this.attrs = attrs;
+            this.enter = enter;
+            this.exit = exit;
+        }
+    }
+
+    private final PipelinedHasher pipeline;
+    private final FileHasher hasher;
+    private final PathFilter filter;
+    private final FileTree tree;
+    private final Predicate<Path> readable;
+
+    /**
+     * Creates a walker.
+     *
+     * @param pipeline the hasher which reads the files, used by {@code hasher} for the contents of the files.
+     * @param hasher the hasher of the files.
+     * @param filter the filter of the walked paths.
+     * @param tree the attributes to read.
+     * @param readable the files which {@code hasher} reads with {@code pipeline}, the only ones to read ahead.
+     */
+    ReadAheadWalker(final PipelinedHasher pipeline, final FileHasher hasher, final PathFilter filter,
+                    final FileTree tree, final Predicate<Path> readable) {
+        this.pipeline = pipeline;
+        this.hasher = hasher;
+        this.filter = filter;
+        this.tree = tree;
+        this.readable = readable;
+    }
+
+    /**
+     * The entries visited but not written yet, and the files among them which have not been read ahead.
+     */
+    private final class Window {
+        private final HashWriter writer;
+        private final Deque<Item> pending = new ArrayDeque<>();
+        private final Deque<Item> unread = new ArrayDeque<>();
+
+        Window(final HashWriter writer) {
+            this.writer = writer;
+        }
+
+        private void readAhead() {
+            while (!unread.isEmpty() && pipeline.readAhead(unread.peek().path)) {
+                unread.poll();
+            }
+        }
+
+        void add(final Item item) throws IOException {
+            pending.add(item);
+            if (item.attrs != null && readable.test(item.path)) {
+                unread.add(item);
+                readAhead();
+            }
+            if (pending.size() > WINDOW) {
+                writeFirst();
+            }
+        }
+
+        private void writeFirst() throws IOException {
+            final var first = pending.poll();
+            final var path = first.path.toString();
+            if (first.enter) {
+                writer.enterDirectory(path);
+            } else if (first.exit) {
+                writer.exitDirectory(path);
+            } else if (first.attrs == null) {
+                writer.write(0, path);
+            } else {
+                if (unread.peek() == first) {
+                    unread.poll();
+                }
+                final long hash = RecursiveWalk.hashFile(hasher, first.path, first.attrs);
+                readAhead();
+                writer.write(hash, path);
+            }
+        }
+
+        void flush() throws IOException {
+            while (!pending.isEmpty()) {
+                writeFirst();
+            }
+        }
+    }
+
+    @Override
+    public void walk(final Path root, final HashWriter writer) throws IOException {
+        final var window = new Window(writer);
+        try {
+            tree.walk(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                    if (!attrs.isDirectory() && filter.accepts(root, file)) {
+                        window.add(new Item(file, attrs, false, false));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
+                    if (filter.accepts(root, file)) {
+                        RecursiveWalk.showOpenError(file.toString(), ex);
+                        window.add(new Item(file, null, false, false));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                        throws IOException {
+                    if (filter.excludes(root, dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    window.add(new Item(dir, null, true, false));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException {
+                    if (ex != null) {
+                        window.flush();
+                        throw ex;
+                    }
+                    window.add(new Item(dir, null, false, true));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            window.flush();
+        } finally {
+            pipeline.cancelReadAhead();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -7,15 +7,21 @@ import java.nio.file.attribute.BasicFileAttributes;
 
 public class RecursiveWalk {
 
+    private static volatile WalkStats stats;
+
     private static void showUsage() {
-        System.out.printf("Usage: %s [path to the input file containing the list of the files and directories to be walked over] [path to the desired output file]%n", RecursiveWalk.class.getName());
+        System.out.printf("Usage: %s %s%n", RecursiveWalk.class.getName(), WalkOptions.USAGE);
     }
 
     private static void showFileError(final String action, final String path, final Exception ex) {
+        final var current = stats;
+        if (current != null) {
+            current.recordError(action, path, ex);
+        }
         System.out.printf("An error occurred while trying to %s %s:%nSystem message: %s%n", action, path, ex.getMessage());
     }
 
-    private static void showReadError(final String path, final Exception ex) {
+    static void showReadError(final String path, final Exception ex) {
         showFileError("read from", path, ex);
     }
 
@@ -23,114 +29,406 @@ public class RecursiveWalk {
         showFileError("write to", path, ex);
     }
 
-    private static void showOpenError(final String path, final Exception ex) {
+    static void showOpenError(final String path, final Exception ex) {
         showFileError("open", path, ex);
     }
 
+    private static void showHashError(final String path, final Exception ex) {
+        showFileError("hash", path, ex);
+    }
+
     private static void showInvalidPathError(final Exception ex) {
+        final var current = stats;
+        if (current != null) {
+            current.recordError("resolve", "", ex);
+        }
         System.out.println("Invalid path:");
         System.out.println(ex.getMessage());
     }
 
-    private static Path getPath(final String[] args, final int i) {
+    private static void writeHash(final ManifestOutput outputWriter, final long hash, final String file)
+            throws IOException {
         try {
-            return Paths.get(args[i]);
-        } catch (InvalidPathException ex) {
-            showInvalidPathError(ex);
-            showUsage();
-            return null;
+            outputWriter.write(hash, file);
+        } catch (IOException ex) {
+            showWriteError(file, ex);
+            throw ex;
         }
     }
 
-    private static void writeHash(final BufferedWriter outputWriter, final int hash, final String file) throws IOException {
+    static long hashFile(final FileHasher hasher, final Path file, final BasicFileAttributes attrs) {
         try {
-            outputWriter.write(String.format("%08x", hash));
-            outputWriter.write(' ');
-            outputWriter.write(file);
-            outputWriter.newLine();
-        } catch (IOException ex) {
-            showWriteError(file, ex);
-            throw ex;
+            return hasher.hash(file, attrs);
+        } catch (final IOException ex) {
+            showHashError(file.toString(), ex);
+            return 0;
+        }
+    }
+
+    private static void walkSequentially(final Path path, final FileHasher hasher, final PathFilter filter,
+                                         final FileTree tree, final HashWriter writer, final long skip,
+                                         final String lastSkipped) throws IOException {
+        tree.walk(path, new SimpleFileVisitor<>() {
+            private long visited;
+
+            private boolean isSkipped(final Path file) {
+                if (visited++ >= skip) {
+                    return false;
+                }
+                if (visited == skip && !file.toString().equals(lastSkipped)) {
+                    System.out.printf("%s has changed since the checkpoint, the manifest may be inconsistent%n", path);
+                }
+                return true;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (attrs.isDirectory() || !filter.accepts(path, file) || isSkipped(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                writer.write(hashFile(hasher, file, attrs), file.toString());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
+                if (!filter.accepts(path, file) || isSkipped(file)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                showOpenError(file.toString(), ex);
+                writer.write(0, file.toString());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                if (filter.excludes(path, dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                writer.enterDirectory(dir.toString());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException {
+                if (ex != null) {
+                    throw ex;
+                }
+                writer.exitDirectory(dir.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Tracks the position of the walk and saves it to the checkpoint from time to time.
+     * When a concurrent walker is used, the checkpoints are only saved between the roots.
+     */
+    private static final class Progress implements HashWriter {
+        private final HashWriter writer;
+        private final ManifestWriter outputWriter;
+        private final Checkpoint checkpoint;
+        private final boolean withinRoots;
+        private long line;
+        private long entries;
+        private String lastEntry = "";
+
+        Progress(final HashWriter writer, final ManifestWriter outputWriter, final Checkpoint checkpoint,
+                 final boolean withinRoots) {
+            this.writer = writer;
+            this.outputWriter = outputWriter;
+            this.checkpoint = checkpoint;
+            this.withinRoots = withinRoots;
+            if (checkpoint.isResumed()) {
+                line = checkpoint.getLine();
+                entries = checkpoint.getEntries();
+                lastEntry = checkpoint.getLastEntry();
+            }
+        }
+
+        @Override
+        public void enterDirectory(final String dir) throws IOException {
+            writer.enterDirectory(dir);
+        }
+
+        @Override
+        public void exitDirectory(final String dir) throws IOException {
+            writer.exitDirectory(dir);
+        }
+
+        @Override
+        public void write(final long hash, final String file) throws IOException {
+            writer.write(hash, file);
+            ++entries;
+            lastEntry = file;
+            if (withinRoots && checkpoint.isDue()) {
+                save();
+            }
+        }
+
+        void nextRoot() throws IOException {
+            ++line;
+            entries = 0;
+            lastEntry = "";
+            if (checkpoint.isDue()) {
+                save();
+            }
+        }
+
+        private void save() throws IOException {
+            checkpoint.save(line, entries, lastEntry, outputWriter.sync());
         }
     }
 
     public static void main(final String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
+        final WalkOptions options;
+        try {
+            options = WalkOptions.parse(args);
+        } catch (final InvalidPathException ex) {
+            showInvalidPathError(ex);
+            showUsage();
+            return;
+        } catch (final IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
             showUsage();
             return;
         }
-        final var input = getPath(args, 0);
-        if (input == null) {
+
+        if (!options.stats) {
+            run(options);
             return;
         }
-        final var output = getPath(args, 1);
-        if (output == null) {
+        try (final var current = WalkStats.start()) {
+            stats = current;
+            run(options);
+            current.printSummary();
+        } finally {
+            stats = null;
+        }
+    }
+
+    private static void run(final WalkOptions options) {
+        final var current = stats;
+        final var hashFunction = current != null ? current.timedFunction(options.hashFunction) : options.hashFunction;
+        FileHasher hasher = current != null ? current.timedOpening(hashFunction) : FileHasher.of(hashFunction);
+        final var chunking = options.chunks ? new ChunkingHasher(hashFunction) : null;
+        final var pipeline = options.pipelined
+                ? new PipelinedHasher(hashFunction, options.readahead, options.readaheads, options.threads) : null;
+        if (pipeline != null) {
+            hasher = pipeline;
+        } else if (options.direct) {
+            hasher = new DirectHasher(hashFunction, hasher);
+        } else if (chunking != null) {
+            hasher = chunking;
+        }
+        final var archives = options.archives ? new ArchiveHasher(hashFunction) : null;
+        if (archives != null && chunking == null) {
+            hasher = archives.reading(hasher);
+        }
+        HashCache cache = null;
+        if (options.cacheFile != null) {
+            try {
+                cache = HashCache.load(options.cacheFile, hashFunction.getName(), hasher);
+                hasher = cache;
+            } catch (final IOException ex) {
+                showReadError(options.cacheFile.toString(), ex);
+                return;
+            }
+        }
+        if (options.verify) {
+            verify(options, current != null ? current.timedHasher(hasher) : hasher);
+            return;
+        }
+        final var links = options.hardLinks ? new LinkHasher(hasher) : null;
+        if (links != null) {
+            hasher = links;
+        }
+        if (archives != null) {
+            hasher = archives.hashing(hasher);
+        }
+        if (current != null) {
+            hasher = current.timedHasher(hasher);
+        }
+        Checkpoint checkpoint = null;
+        if (options.checkpointFile != null) {
+            try {
+                checkpoint = Checkpoint.load(options.checkpointFile, options.hashFunction.getName(),
+                        options.input);
+            } catch (final IOException ex) {
+                showReadError(options.checkpointFile.toString(), ex);
+                return;
+            }
+        }
+        final boolean walked;
+        final var tree = links != null ? FileTree.UNIX : FileTree.BASIC;
+        try (final Walker walker = options.threads > 1
+                ? new ParallelWalker(options.threads, hasher, options.filter, tree)
+                : options.perDevice > 0 ? new ConcurrentWalker(hasher, options.perDevice, options.filter, tree)
+                : options.inodeOrder ? new InodeOrderWalker(hasher, options.filter, tree)
+                : pipeline != null ? new ReadAheadWalker(pipeline, hasher, options.filter, tree,
+                        file -> archives == null || !ArchiveHasher.isArchive(file.toString()))
+                : null) {
+            walked = walk(options, hasher, tree, walker, checkpoint, links, chunking, archives);
+        }
+        if (links != null) {
+            try {
+                links.close();
+            } catch (final IOException ex) {
+                showFileError("delete", "the links spilled by --hard-links", ex);
+            }
+        }
+        // A failed walk may have skipped most of the files, so it does not tell which entries are stale
+        if (walked && cache != null) {
+            try {
+                cache.save(options.cacheFile);
+            } catch (final IOException ex) {
+                showWriteError(options.cacheFile.toString(), ex);
+            }
+        }
+    }
+
+    private static void verify(final WalkOptions options, final FileHasher hasher) {
+        final var input = options.input;
+        final var verifier = new Verifier(hasher, options.threads, options.maxFailures);
+        try (final var manifest = ManifestReader.open(input)) {
+            final int bits = options.hashFunction.getBits();
+            if (manifest.getDigits() != (bits + 3) / 4) {
+                System.out.printf("%s was not written with the %s hash function%n", input, options.hashFunction.getName());
+                return;
+            }
+            try (final var report = new ManifestWriter(options.output, bits)) {
+                verifier.verify(manifest, report);
+            } catch (final IOException ex) {
+                showFileError("verify", input.toString(), ex);
+                return;
+            }
+        } catch (final IOException ex) {
+            showOpenError(input.toString(), ex);
             return;
         }
+        verifier.printSummary();
+    }
 
+    private static boolean walk(final WalkOptions options, final FileHasher hasher, final FileTree tree,
+                                final Walker walker, final Checkpoint checkpoint, final LinkHasher links,
+                                final ChunkingHasher chunking, final ArchiveHasher archives) {
+        final var input = options.input;
+        final var output = options.output;
+        final boolean resumed = checkpoint != null && checkpoint.isResumed();
         try (final var inputReader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
-            try (final var outputWriter = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            final int bits = options.hashFunction.getBits();
+            try (final ManifestOutput outputWriter = options.binary ? new BinaryManifestWriter(output, bits)
+                    : new ManifestWriter(output, bits, resumed ? checkpoint.getOffset() : 0);
+                 final var watcher = options.watch ? new TreeWatcher(hasher, (ManifestWriter) outputWriter) : null;
+                 final var sortingWriter = options.sortBudget > 0 ? new SortingWriter(options.sortBudget) : null) {
+                // Watching and checkpoints are only allowed with text manifests
+                final var textWriter = options.binary ? null : (ManifestWriter) outputWriter;
+                final var duplicateFinder = options.duplicates
+                        ? new DuplicateFinder(options.hashFunction, hasher, options.filter) : null;
+                final HashWriter baseWriter = sortingWriter != null
+                        ? sortingWriter : (hash, file) -> writeHash(outputWriter, hash, file);
+                final var current = stats;
+                final HashWriter fileWriter = current != null ? current.timedWriter(baseWriter) : baseWriter;
+                final var chunkWriter = chunking != null ? new ChunkWriter(fileWriter, chunking) : null;
+                final HashWriter chunkedWriter = chunkWriter != null ? chunkWriter : fileWriter;
+                final HashWriter entryWriter = archives != null ? new ArchiveWriter(chunkedWriter, archives) : chunkedWriter;
+                final var merkleWriter = options.merkle ? new MerkleWriter(entryWriter, options.hashFunction) : null;
+                final HashWriter manifestWriter = merkleWriter != null ? merkleWriter : entryWriter;
+                // The read-ahead walker hashes the files on this thread, in the same order as a sequential walk
+                final var progress = checkpoint != null ? new Progress(manifestWriter, textWriter, checkpoint,
+                        walker == null || walker instanceof ReadAheadWalker) : null;
+                final HashWriter writer = watcher != null ? watcher.recording(manifestWriter)
+                        : progress != null ? progress : manifestWriter;
                 try {
                     String line;
-                    while ((line = inputReader.readLine()) != null) {
-                        final Path path;
-                        try {
-                            path = Paths.get(line);
-                        } catch (final InvalidPathException ex) {
-                            showInvalidPathError(ex);
-                            writeHash(outputWriter, 0, line);
+                    for (long index = 0; (line = inputReader.readLine()) != null; ++index) {
+                        if (resumed && index < checkpoint.getLine()) {
                             continue;
                         }
+                        final boolean first = resumed && index == checkpoint.getLine();
+                        final long skip = first ? checkpoint.getEntries() : 0;
+                        Path path;
                         try {
-                            Files.walkFileTree(path, new SimpleFileVisitor<>() {
-                                private FileVisitResult processFail(final Path file) throws IOException {
-                                    writeHash(outputWriter, 0, file.toString());
-                                    return FileVisitResult.CONTINUE;
+                            path = Paths.get(line);
+                        } catch (final InvalidPathException ex) {
+                            if (skip == 0) {
+                                showInvalidPathError(ex);
+                                // The manifest of --duplicates only lists clusters, so the error is reported only
+                                if (duplicateFinder == null) {
+                                    writer.write(0, line);
                                 }
-
-                                @Override
-                                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-                                    if (attrs.isDirectory()) {
-                                        return FileVisitResult.CONTINUE;
-                                    }
-                                    final InputStream is;
-                                    try {
-                                        is = Files.newInputStream(file);
-                                    } catch (IOException ex) {
-                                        showOpenError(file.toString(), ex);
-                                        return processFail(file);
-                                    }
-                                    final int hash;
-                                    try {
-                                        hash = FNV.get32BitHash(is);
-                                    } catch (IOException ex) {
-                                        showReadError(file.toString(), ex);
-                                        return processFail(file);
-                                    }
-                                    writeHash(outputWriter, hash, file.toString());
-                                    return FileVisitResult.CONTINUE;
+                            }
+                            path = null;
+                        }
+                        if (path != null) {
+                            try {
+                                if (watcher != null) {
+                                    watcher.register(path);
                                 }
-
-                                @Override
-                                public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
-                                    showOpenError(file.toString(), ex);
-                                    return processFail(file);
+                            } catch (final IOException ex) {
+                                showFileError("watch", path.toString(), ex);
+                            }
+                            try {
+                                if (duplicateFinder != null) {
+                                    duplicateFinder.add(path);
+                                } else if (walker != null && skip == 0) {
+                                    // The concurrent walkers cannot skip entries, so a root resumed
+                                    // in the middle, as saved by a sequential walk, is finished sequentially
+                                    walker.walk(path, writer);
+                                } else {
+                                    walkSequentially(path, hasher, options.filter, tree, writer, skip,
+                                            first ? checkpoint.getLastEntry() : "");
                                 }
-                            });
-                        } catch (final IOException ex) {
-                            showWriteError(output.toString(), ex);
-                            break;
+                            } catch (final IOException ex) {
+                                showWriteError(output.toString(), ex);
+                                return false;
+                            }
+                        }
+                        if (progress != null) {
+                            progress.nextRoot();
                         }
                     }
                 } catch (final IOException ex) {
                     showReadError(input.toString(), ex);
+                    return false;
+                }
+                try {
+                    if (duplicateFinder != null) {
+                        duplicateFinder.write(outputWriter);
+                    }
+                    if (sortingWriter != null) {
+                        sortingWriter.writeTo(outputWriter);
+                    }
+                    if (merkleWriter != null) {
+                        merkleWriter.writeDigests(outputWriter);
+                    }
+                    if (links != null) {
+                        links.writeGroups(outputWriter);
+                    }
+                    if (chunkWriter != null) {
+                        chunkWriter.printStatistics();
+                    }
+                    if (watcher != null) {
+                        textWriter.flush();
+                        watcher.watch();
+                    }
+                    if (checkpoint != null) {
+                        textWriter.sync();
+                        checkpoint.delete();
+                    }
+                } catch (final IOException ex) {
+                    showWriteError(output.toString(), ex);
+                    return false;
                 }
             } catch (final IOException ex) {
                 showOpenError(output.toString(), ex);
+                return false;
             }
         } catch (final IOException ex) {
             showOpenError(input.toString(), ex);
+            return false;
         }
+        return true;
     }
 
-}
\ No newline at end of file
+}
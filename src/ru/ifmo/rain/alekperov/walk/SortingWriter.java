@@ -0,0 +1,184 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the hashes and writes them sorted by path, using no more than the given amount of memory
+ * for the entries: when the budget is exceeded, the collected entries are sorted and spilled to a temporary file,
+ * and the runs are merged at the end. The buffers of the runs merged at once fit into the budget as well,
+ * and at most {@value #MAX_FAN_IN} runs are open at once, so many runs are merged in several passes.
+ */
+class SortingWriter implements HashWriter, Closeable {
+
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FAN_IN = 64;
+
+    private static final class Entry {
+        private final long hash;
+        private final String file;
+
+        Entry(final long hash, final String file) {
+            this.hash = hash;
+            this.file = file;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing(entry -> entry.file);
+
+    private final long budget;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private long used;
+
+    /**
+     * Creates a writer.
+     *
+     * @param budget the approximate number of bytes the collected entries may occupy.
+     */
+    SortingWriter(final long budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void write(final long hash, final String file) throws IOException {
+        entries.add(new Entry(hash, file));
+        used += ENTRY_OVERHEAD + 2L * file.length();
+        if (used > budget) {
+            spill();
+        }
+    }
+
+    private Path newRun() throws IOException {
+        final var run = Files.createTempFile("walk-run", ".tmp");
+        runs.add(run);
+        return run;
+    }
+
+    private static DataOutputStream openRun(final Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private static void writeEntry(final DataOutputStream os, final long hash, final String file) throws IOException {
+        final var bytes = file.getBytes(StandardCharsets.UTF_8);
+        os.writeLong(hash);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private void spill() throws IOException {
+        entries.sort(ORDER);
+        try (final var os = openRun(newRun())) {
+            for (final var entry : entries) {
+                writeEntry(os, entry.hash, entry.file);
+            }
+        }
+        entries.clear();
+        used = 0;
+    }
+
+    private static final class Run implements Closeable {
+        private final DataInputStream is;
+        private Entry current;
+
+        Run(final Path file) throws IOException {
+            is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), RUN_BUFFER_SIZE));
+            advance();
+        }
+
+        boolean advance() throws IOException {
+            try {
+                final long hash = is.readLong();
+                final var bytes = new byte[is.readInt()];
+                is.readFully(bytes);
+                current = new Entry(hash, new String(bytes, StandardCharsets.UTF_8));
+                return true;
+            } catch (final EOFException ex) {
+                current = null;
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            is.close();
+        }
+    }
+
+    private static void merge(final List<Path> group, final HashWriter writer) throws IOException {
+        final List<Run> opened = new ArrayList<>();
+        try {
+            final PriorityQueue<Run> queue = new PriorityQueue<>(Comparator.comparing(run -> run.current, ORDER));
+            for (final var run : group) {
+                final var reader = new Run(run);
+                opened.add(reader);
+                if (reader.current != null) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                final var run = queue.poll();
+                writer.write(run.current.hash, run.current.file);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (final var run : opened) {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * Writes all the collected entries in the order of paths.
+     *
+     * @param writer the manifest writer.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeTo(final HashWriter writer) throws IOException {
+        if (runs.isEmpty()) {
+            entries.sort(ORDER);
+            for (final var entry : entries) {
+                writer.write(entry.hash, entry.file);
+            }
+            entries.clear();
+            return;
+        }
+        spill();
+        // One more buffer is needed for the output of an intermediate pass
+        final int fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, budget / RUN_BUFFER_SIZE - 1));
+        while (runs.size() > fanIn) {
+            final var group = new ArrayList<>(runs.subList(0, fanIn));
+            try (final var os = openRun(newRun())) {
+                merge(group, (hash, file) -> writeEntry(os, hash, file));
+            }
+            runs.subList(0, fanIn).clear();
+            for (final var run : group) {
+                Files.delete(run);
+            }
+        }
+        merge(runs, writer);
+    }
+
+    /**
+     * Removes the temporary files.
+     *
+     * @throws IOException if a file cannot be removed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (final var run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+}
@@ -0,0 +1,54 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The hash functions available out of the box.
+ */
+public enum StandardHashFunction implements HashFunction {
+
+    /**
+     * 32-bit FNV-1, the historical default.
+     */
+    FNV_32("fnv32", 32, FNV.Hash32::new),
+    /**
+     * 64-bit FNV-1a.
+     */
+    FNV_1A_64("fnv1a64", 64, FNV.Hash64a::new),
+    /**
+     * CRC-32C, computed with the JDK intrinsic.
+     */
+    CRC_32C("crc32c", 32, CRC32C::new),
+    /**
+     * 64-bit xxHash.
+     */
+    XXH_64("xxh64", 64, XXHash64::new);
+
+    private final String name;
+    private final int bits;
+    private final Supplier<Checksum> factory;
+
+    StandardHashFunction(final String name, final int bits, final Supplier<Checksum> factory) {
+        this.name = name;
+        this.bits = bits;
+        this.factory = factory;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getBits() {
+        return bits;
+    }
+
+    @Override
+    public Checksum newChecksum() {
+        return factory.get();
+    }
+
+}
@@ -0,0 +1,126 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads manifests in the text format of {@link ManifestWriter}. The width of the hashes is taken from the first entry.
+ * Tagged lines, as written in watch mode, are rejected as malformed.
+ * Lines are split on {@code '\n'} only, so a {@code '\r'} in a path is read back as it is;
+ * where the line separator is {@code "\r\n"}, the {@code '\r'} ending every line is dropped.
+ */
+class TextManifestReader implements ManifestReader {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+    private static final boolean CRLF = System.lineSeparator().equals("\r\n");
+
+    private final BufferedReader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final int digits;
+    private int pendingBreaks;
+    private String pending;
+
+    /**
+     * Opens the manifest and reads up to its first entry.
+     *
+     * @param file the manifest file.
+     * @throws IOException if the file cannot be read or its first entry is malformed.
+     */
+    TextManifestReader(final Path file) throws IOException {
+        reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            while ((pending = readLine()) != null && pending.isEmpty()) {
+                ++pendingBreaks;
+            }
+            digits = pending == null ? 8 : pending.indexOf(' ');
+            if (pending != null && (digits < 1 || digits > 16)) {
+                throw malformed(pending, null);
+            }
+        } catch (final IOException ex) {
+            reader.close();
+            throw ex;
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = null;
+        while (true) {
+            if (position == limit) {
+                position = 0;
+                limit = Math.max(0, reader.read(buffer));
+                if (limit == 0) {
+                    return line == null ? null : trim(line.toString());
+                }
+            }
+            int end = position;
+            while (end < limit && buffer[end] != '\n') {
+                ++end;
+            }
+            if (end < limit) {
+                final String result = line == null
+                        ? new String(buffer, position, end - position)
+                        : line.append(buffer, position, end - position).toString();
+                position = end + 1;
+                return trim(result);
+            }
+            if (line == null) {
+                line = new StringBuilder();
+            }
+            line.append(buffer, position, limit - position);
+            position = limit;
+        }
+    }
+
+    private static String trim(final String line) {
+        return CRLF && line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static IOException malformed(final String line, final Exception cause) {
+        return new IOException("Malformed manifest line: " + line, cause);
+    }
+
+    @Override
+    public int getDigits() {
+        return digits;
+    }
+
+    @Override
+    public Entry next() throws IOException {
+        if (pendingBreaks > 0) {
+            --pendingBreaks;
+            return new Entry(0, null);
+        }
+        final String line;
+        if (pending != null) {
+            line = pending;
+            pending = null;
+        } else {
+            line = readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        if (line.isEmpty()) {
+            return new Entry(0, null);
+        }
+        if (line.length() <= digits || line.charAt(digits) != ' ') {
+            throw malformed(line, null);
+        }
+        try {
+            return new Entry(Long.parseUnsignedLong(line.substring(0, digits), 16), line.substring(digits + 1));
+        } catch (final NumberFormatException ex) {
+            throw malformed(line, ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
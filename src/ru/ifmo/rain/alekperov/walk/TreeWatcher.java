@@ -0,0 +1,298 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the hashes of the walked trees up to date using a {@link WatchService}.
+ * Created and modified files are rehashed, created directories are scanned, and every change is written
+ * as a manifest line tagged with {@code +} (added), {@code ~} (changed) or {@code -} (removed).
+ * When the service loses events, only the direct entries of the directory which they belonged to are listed again:
+ * new entries are scanned, files whose size or modification time differ are rehashed and missing entries
+ * are removed, while the subdirectories already watched are left to their own events.
+ * Every directory is listed at most once per batch of events, however many times its events were lost.
+ */
+class TreeWatcher implements Closeable {
+
+    private static final char ADDED = '+';
+    private static final char CHANGED = '~';
+    private static final char REMOVED = '-';
+
+    private final WatchService service;
+    private final FileHasher hasher;
+    private final ManifestWriter writer;
+    private final List<Path> roots = new ArrayList<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final NavigableSet<String> watched = new TreeSet<>();
+    private final NavigableMap<String, Known> known = new TreeMap<>();
+
+    /**
+     * The hash of a file and the attributes it was computed for, or {@code -1} if they are unknown.
+     */
+    private static final class Known {
+        private final long hash;
+        private final long size;
+        private final long modified;
+
+        Known(final long hash, final long size, final long modified) {
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean isUpToDate(final BasicFileAttributes attrs) {
+            return size == attrs.size() && modified == attrs.lastModifiedTime().toMillis();
+        }
+    }
+
+    TreeWatcher(final FileHasher hasher, final ManifestWriter writer) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.hasher = hasher;
+        this.writer = writer;
+    }
+
+    private void registerDirectory(final Path dir) throws IOException {
+        directories.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+        watched.add(dir.toString());
+    }
+
+    /**
+     * Starts watching the given root. Should be called before the root is walked, so no change is missed.
+     *
+     * @param root the walked file or directory.
+     * @throws IOException if the root cannot be watched.
+     */
+    void register(final Path root) throws IOException {
+        roots.add(root);
+        if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                        throws IOException {
+                    registerDirectory(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            final var parent = root.getParent();
+            registerDirectory(parent == null ? Paths.get("") : parent);
+        }
+    }
+
+    /**
+     * Records the hashes of the initial walk before passing them to the given writer.
+     *
+     * @param writer the writer of the initial manifest.
+     * @return the recording writer.
+     */
+    HashWriter recording(final HashWriter writer) {
+        return (hash, file) -> {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(Paths.get(file), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (final IOException ex) {
+                attrs = null;
+            }
+            known.put(file, newKnown(hash, attrs));
+            writer.write(hash, file);
+        };
+    }
+
+    private boolean isWatched(final Path path) {
+        return roots.stream().anyMatch(path::startsWith);
+    }
+
+    private static Known newKnown(final long hash, final BasicFileAttributes attrs) {
+        return attrs == null ? new Known(hash, -1, -1)
+                : new Known(hash, attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    private Collection<String> getSubtree(final String path) {
+        final var prefix = path + File.separator;
+        final Collection<String> result = new ArrayList<>(known.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+        if (known.containsKey(path)) {
+            result.add(path);
+        }
+        return result;
+    }
+
+    private void update(final String file, final long hash, final BasicFileAttributes attrs) throws IOException {
+        final var previous = known.put(file, newKnown(hash, attrs));
+        if (previous == null) {
+            writer.write(ADDED, hash, file);
+        } else if (previous.hash != hash) {
+            writer.write(CHANGED, hash, file);
+        }
+    }
+
+    private void remove(final Collection<String> files) throws IOException {
+        for (final var file : files) {
+            writer.write(REMOVED, known.remove(file).hash, file);
+        }
+    }
+
+    private void rescan(final Path start) throws IOException {
+        final Set<String> stale = new HashSet<>(getSubtree(start.toString()));
+        if (Files.exists(start, LinkOption.NOFOLLOW_LINKS)) {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    try {
+                        registerDirectory(dir);
+                    } catch (final IOException ex) {
+                        RecursiveWalk.showOpenError(dir.toString(), ex);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                    stale.remove(file.toString());
+                    update(file.toString(), RecursiveWalk.hashFile(hasher, file, attrs), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
+                    RecursiveWalk.showOpenError(file.toString(), ex);
+                    stale.remove(file.toString());
+                    update(file.toString(), 0, null);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        remove(stale);
+    }
+
+    private static Collection<String> below(final NavigableSet<String> paths, final String path) {
+        final var prefix = path + File.separator;
+        return paths.subSet(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private void removeSubtree(final String path) throws IOException {
+        watched.remove(path);
+        below(watched, path).clear();
+        remove(getSubtree(path));
+    }
+
+    /**
+     * Lists the direct entries of a directory whose events were lost.
+     */
+    void overflow(final Path dir) throws IOException {
+        if (!isWatched(dir)) {
+            for (final var root : roots) {
+                if (root.startsWith(dir)) {
+                    rescan(root);
+                }
+            }
+            return;
+        }
+        final Set<String> names = new HashSet<>();
+        try (final var entries = Files.newDirectoryStream(dir)) {
+            for (final var entry : entries) {
+                final BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (final IOException ex) {
+                    // Removed since it was listed
+                    continue;
+                }
+                names.add(entry.getFileName().toString());
+                final var file = entry.toString();
+                if (attrs.isDirectory()) {
+                    if (!watched.contains(file)) {
+                        rescan(entry);
+                    }
+                    continue;
+                }
+                // A directory may have been replaced with a file
+                remove(new ArrayList<>(below(known.navigableKeySet(), file)));
+                final var previous = known.get(file);
+                if (previous == null || !previous.isUpToDate(attrs)) {
+                    update(file, RecursiveWalk.hashFile(hasher, entry, attrs), attrs);
+                }
+            }
+        } catch (final NoSuchFileException | NotDirectoryException ex) {
+            removeSubtree(dir.toString());
+            return;
+        }
+        // Every known child is followed by its subtree, which is skipped at once
+        final var prefix = dir + File.separator;
+        String key = known.ceilingKey(prefix);
+        while (key != null && key.startsWith(prefix)) {
+            final var rest = key.substring(prefix.length());
+            final int separator = rest.indexOf(File.separatorChar);
+            final var name = separator < 0 ? rest : rest.substring(0, separator);
+            final var child = prefix + name;
+            final var next = known.higherKey(separator < 0 ? key : child + File.separator + Character.MAX_VALUE);
+            if (!names.contains(name)) {
+                removeSubtree(child);
+            }
+            key = next;
+        }
+    }
+
+    private void process(final Path dir, final WatchEvent<?> event) throws IOException {
+        final var path = dir.resolve((Path) event.context());
+        if (!isWatched(path)) {
+            return;
+        }
+        if (event.kind() == ENTRY_DELETE) {
+            removeSubtree(path.toString());
+        } else if (event.kind() == ENTRY_CREATE || !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            rescan(path);
+        }
+    }
+
+    /**
+     * Processes the changes until the thread is interrupted, flushing the writer after each batch.
+     *
+     * @throws IOException if the changes cannot be written.
+     */
+    void watch() throws IOException {
+        try {
+            while (true) {
+                final Set<Path> overflowed = new LinkedHashSet<>();
+                var key = service.take();
+                do {
+                    final var dir = directories.get(key);
+                    if (dir != null) {
+                        for (final var event : key.pollEvents()) {
+                            if (event.kind() == OVERFLOW) {
+                                overflowed.add(dir);
+                            } else {
+                                process(dir, event);
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        directories.remove(key);
+                    }
+                } while ((key = service.poll()) != null);
+                for (final var dir : overflowed) {
+                    overflow(dir);
+                }
+                writer.flush();
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException ignored) {
+            // Finishing.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+/**
+ * The basic attributes of a file together with its device, inode number and number of links,
+ * all read by a single {@code stat} through the {@code unix} attribute view.
+ */
+final class UnixAttributes implements BasicFileAttributes {
+
+    private static final boolean SUPPORTED = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    private static final String ATTRIBUTES = "unix:size,lastModifiedTime,lastAccessTime,creationTime,"
+            + "isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey,dev,ino,nlink";
+
+    private final Map<String, Object> attributes;
+    private final long device;
+    private final long inode;
+    private final int links;
+
+    private UnixAttributes(final Map<String, Object> attributes) {
+        this.attributes = attributes;
+        device = (Long) attributes.get("dev");
+        inode = (Long) attributes.get("ino");
+        links = (Integer) attributes.get("nlink");
+    }
+
+    /**
+     * Reads the attributes of the file without following symbolic links.
+     *
+     * @param file the file.
+     * @return the Unix attributes or, on the platforms without them, the basic ones.
+     * @throws IOException if the attributes cannot be read.
+     */
+    static BasicFileAttributes read(final Path file) throws IOException {
+        if (!SUPPORTED) {
+            return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        return new UnixAttributes(Files.readAttributes(file, ATTRIBUTES, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    long getDevice() {
+        return device;
+    }
+
+    long getInode() {
+        return inode;
+    }
+
+    int getLinks() {
+        return links;
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return (FileTime) attributes.get("lastModifiedTime");
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return (FileTime) attributes.get("lastAccessTime");
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return (FileTime) attributes.get("creationTime");
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return (Boolean) attributes.get("isRegularFile");
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return (Boolean) attributes.get("isDirectory");
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return (Boolean) attributes.get("isSymbolicLink");
+    }
+
+    @Override
+    public boolean isOther() {
+        return (Boolean) attributes.get("isOther");
+    }
+
+    @Override
+    public long size() {
+        return (Long) attributes.get("size");
+    }
+
+    @Override
+    public Object fileKey() {
+        return attributes.get("fileKey");
+    }
+
+}
@@ -0,0 +1,55 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned LEB128 encoding of non-negative integers.
+ */
+class Varints {
+
+    private Varints() {
+    }
+
+    static int put(final byte[] bytes, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            bytes[pos++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int get(final ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    static void write(final DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int read(final DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = in.readByte();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rehashes the files listed in a manifest and reports the ones which do not match it: changed files are written
+ * with the tag {@code ~} and their current hash, missing ones with {@code -} and unreadable ones with {@code !},
+ * both with the recorded hash. The manifest is read in ranges of {@value #RANGE_SIZE} entries which are
+ * verified concurrently, while the failures are reported in the order of the manifest.
+ * Only the entries before the first empty line are verified, the sections after it list directories and groups.
+ */
+class Verifier {
+
+    private static final int RANGE_SIZE = 256;
+
+    private static final class Failure {
+        private final char kind;
+        private final long hash;
+        private final String file;
+
+        Failure(final char kind, final long hash, final String file) {
+            this.kind = kind;
+            this.hash = hash;
+            this.file = file;
+        }
+    }
+
+    private final FileHasher hasher;
+    private final int threads;
+    private final long maxFailures;
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private long written;
+
+    /**
+     * Creates a verifier.
+     *
+     * @param hasher the hasher computing the function of the manifest.
+     * @param threads the number of verifying threads.
+     * @param maxFailures the number of failures after which the verification stops.
+     */
+    Verifier(final FileHasher hasher, final int threads, final long maxFailures) {
+        this.hasher = hasher;
+        this.threads = threads;
+        this.maxFailures = maxFailures;
+    }
+
+    private boolean isStopped() {
+        return failures.get() >= maxFailures;
+    }
+
+    /**
+     * Hashes the file like the walk does. The walk reads the attributes of the links themselves and records
+     * the links which cannot be hashed, dangling or pointing to directories, with a zero hash.
+     */
+    private long hash(final Path file, final BasicFileAttributes attrs) throws IOException {
+        try {
+            return hasher.hash(file, attrs);
+        } catch (final IOException ex) {
+            if (attrs.isSymbolicLink()) {
+                return 0;
+            }
+            throw ex;
+        }
+    }
+
+    private Failure check(final ManifestReader.Entry entry) {
+        try {
+            final var file = Paths.get(entry.file);
+            final var attrs = FileTree.BASIC.readAttributes(file);
+            final long hash = hash(file, attrs);
+            return hash == entry.hash ? null : new Failure('~', hash, entry.file);
+        } catch (final NoSuchFileException ex) {
+            return new Failure('-', entry.hash, entry.file);
+        } catch (final IOException | InvalidPathException ex) {
+            return new Failure('!', entry.hash, entry.file);
+        }
+    }
+
+    private List<Failure> verify(final List<ManifestReader.Entry> range) {
+        final List<Failure> result = new ArrayList<>();
+        for (final var entry : range) {
+            if (isStopped()) {
+                break;
+            }
+            final var failure = check(entry);
+            verified.incrementAndGet();
+            if (failure != null) {
+                result.add(failure);
+                failures.incrementAndGet();
+            }
+        }
+        return result;
+    }
+
+    private void writeFirst(final Deque<Future<List<Failure>>> pending, final ManifestWriter report)
+            throws IOException {
+        final List<Failure> range;
+        try {
+            range = pending.removeFirst().get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (final ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        for (final var failure : range) {
+            if (written++ < maxFailures) {
+                report.write(failure.kind, failure.hash, failure.file);
+            }
+        }
+    }
+
+    /**
+     * Verifies the entries of the manifest.
+     *
+     * @param manifest the manifest, which must use the same hash function as the hasher.
+     * @param report the writer of the failures.
+     * @throws IOException if the manifest cannot be read or the report cannot be written.
+     */
+    void verify(final ManifestReader manifest, final ManifestWriter report) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final Deque<Future<List<Failure>>> pending = new ArrayDeque<>();
+            List<ManifestReader.Entry> range = new ArrayList<>(RANGE_SIZE);
+            ManifestReader.Entry entry;
+            while (!isStopped() && (entry = manifest.next()) != null && !entry.isBreak()) {
+                range.add(entry);
+                if (range.size() == RANGE_SIZE) {
+                    final var submitted = range;
+                    pending.add(executor.submit(() -> verify(submitted)));
+                    range = new ArrayList<>(RANGE_SIZE);
+                    if (pending.size() > 2 * threads) {
+                        writeFirst(pending, report);
+                    }
+                }
+            }
+            final var last = range;
+            pending.add(executor.submit(() -> verify(last)));
+            while (!pending.isEmpty()) {
+                writeFirst(pending, report);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints the number of the verified files and failures.
+     */
+    void printSummary() {
+        System.out.printf("%d files verified, %d failed%s%n", verified.get(), Math.min(failures.get(), maxFailures),
+                isStopped() ? ", the failure budget is exhausted" : "");
+    }
+
+}
@@ -0,0 +1,252 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options of {@link RecursiveWalk}.
+ */
+class WalkOptions {
+
+    static final String USAGE = "[--threads <number of walking threads> | --per-device <files hashed at once per device>"
+            + " | --inode-order]"
+            + " [--cache <path to the hash cache file>]"
+            + " [--hash <fnv32|fnv1a64|crc32c|xxh64>]"
+            + " [[--readahead [<path>=]<number of chunks to read ahead>]... | --direct]"
+            + " [--checkpoint <path to the checkpoint file>]"
+            + " [--merkle]"
+            + " [--archives]"
+            + " [--chunks]"
+            + " [--hard-links]"
+            + " [--sort <memory budget in bytes, with an optional k, m or g suffix>]"
+            + " [--include <glob or regex:pattern>]... [--exclude <glob or regex:pattern>]..."
+            + " [--watch | --duplicates]"
+            + " [--binary]"
+            + " [--verify [--max-failures <number of failures to stop after>]]"
+            + " [--stats]"
+            + " [path to the input file containing the list of the files and directories to be walked over]"
+            + " [path to the desired output file]";
+
+    int threads = 1;
+    int perDevice;
+    boolean inodeOrder;
+    Path cacheFile;
+    HashFunction hashFunction = StandardHashFunction.FNV_32;
+    boolean pipelined;
+    boolean direct;
+    int readahead = 4;
+    final Map<Path, Integer> readaheads = new HashMap<>();
+    Path checkpointFile;
+    boolean merkle;
+    boolean archives;
+    boolean chunks;
+    boolean hardLinks;
+    long sortBudget;
+    PathFilter filter = PathFilter.ALL;
+    boolean watch;
+    boolean duplicates;
+    boolean binary;
+    boolean verify;
+    long maxFailures = Long.MAX_VALUE;
+    boolean stats;
+    Path input;
+    Path output;
+
+    private WalkOptions() {
+    }
+
+    private static String getValue(final String[] args, final int pos, final String option) {
+        if (pos >= args.length - 2) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return args[pos];
+    }
+
+    static int parsePositive(final String name, final String value) {
+        try {
+            final int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (final NumberFormatException ignored) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+
+    private void parseReadahead(final String value) {
+        pipelined = true;
+        final int separator = value.lastIndexOf('=');
+        if (separator == -1) {
+            readahead = parsePositive("readahead depth", value);
+        } else {
+            final var path = Paths.get(value.substring(0, separator)).toAbsolutePath().normalize();
+            readaheads.put(path, parsePositive("readahead depth", value.substring(separator + 1)));
+        }
+    }
+
+    static long parseSize(final String name, final String value) {
+        final var suffixes = "kmg";
+        final int suffix = value.isEmpty() ? -1 : suffixes.indexOf(Character.toLowerCase(value.charAt(value.length() - 1)));
+        try {
+            final long result = Long.parseLong(suffix == -1 ? value : value.substring(0, value.length() - 1));
+            if (result > 0) {
+                return result << 10 * (suffix + 1);
+            }
+        } catch (final NumberFormatException ignored) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+
+    /**
+     * Parses the options followed by the input and the output paths.
+     *
+     * @param args the command line arguments.
+     * @return the parsed options.
+     * @throws IllegalArgumentException if the arguments are malformed.
+     * @throws InvalidPathException if one of the paths is invalid.
+     */
+    static WalkOptions parse(final String[] args) {
+        if (args == null || args.length < 2) {
+            throw new IllegalArgumentException("Expected input and output files");
+        }
+        for (final var arg : args) {
+            if (arg == null) {
+                throw new IllegalArgumentException("Null argument");
+            }
+        }
+        final var options = new WalkOptions();
+        final List<String> includes = new ArrayList<>();
+        final List<String> excludes = new ArrayList<>();
+        int pos = 0;
+        while (pos < args.length - 2) {
+            final var option = args[pos++];
+            switch (option) {
+                case "--threads":
+                    options.threads = parsePositive("number of threads", getValue(args, pos++, option));
+                    break;
+                case "--per-device":
+                    options.perDevice = parsePositive("number of files per device", getValue(args, pos++, option));
+                    break;
+                case "--inode-order":
+                    options.inodeOrder = true;
+                    break;
+                case "--cache":
+                    options.cacheFile = Paths.get(getValue(args, pos++, option));
+                    break;
+                case "--hash":
+                    options.hashFunction = HashFunction.forName(getValue(args, pos++, option));
+                    break;
+                case "--readahead":
+                    options.parseReadahead(getValue(args, pos++, option));
+                    break;
+                case "--direct":
+                    options.direct = true;
+                    break;
+                case "--checkpoint":
+                    options.checkpointFile = Paths.get(getValue(args, pos++, option));
+                    break;
+                case "--sort":
+                    options.sortBudget = parseSize("memory budget", getValue(args, pos++, option));
+                    break;
+                case "--merkle":
+                    options.merkle = true;
+                    break;
+                case "--hard-links":
+                    options.hardLinks = true;
+                    break;
+                case "--chunks":
+                    options.chunks = true;
+                    break;
+                case "--archives":
+                    options.archives = true;
+                    break;
+                case "--include":
+                    includes.add(getValue(args, pos++, option));
+                    break;
+                case "--exclude":
+                    excludes.add(getValue(args, pos++, option));
+                    break;
+                case "--watch":
+                    options.watch = true;
+                    break;
+                case "--duplicates":
+                    options.duplicates = true;
+                    break;
+                case "--binary":
+                    options.binary = true;
+                    break;
+                case "--verify":
+                    options.verify = true;
+                    break;
+                case "--stats":
+                    options.stats = true;
+                    break;
+                case "--max-failures":
+                    options.maxFailures = parsePositive("number of failures", getValue(args, pos++, option));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (pos != args.length - 2) {
+            throw new IllegalArgumentException("Expected input and output files");
+        }
+        if ((options.threads > 1 ? 1 : 0) + (options.perDevice > 0 ? 1 : 0) + (options.inodeOrder ? 1 : 0) > 1) {
+            throw new IllegalArgumentException("Only one of --threads, --per-device and --inode-order can be used");
+        }
+        if (options.pipelined && options.direct) {
+            throw new IllegalArgumentException("--readahead and --direct cannot be combined");
+        }
+        if (options.chunks && (options.cacheFile != null || options.pipelined || options.direct)) {
+            throw new IllegalArgumentException("--chunks cannot be combined with --cache, --readahead or --direct");
+        }
+        options.filter = PathFilter.compile(includes, excludes);
+        if (options.verify && (options.perDevice > 0 || options.inodeOrder || options.cacheFile != null
+                || options.checkpointFile != null || options.merkle || options.archives || options.chunks
+                || options.hardLinks || options.sortBudget > 0 || options.filter != PathFilter.ALL || options.watch
+                || options.duplicates || options.binary)) {
+            throw new IllegalArgumentException("--verify can only be combined with"
+                    + " --threads, --hash, --readahead, --direct, --max-failures and --stats");
+        }
+        if (!options.verify && options.maxFailures != Long.MAX_VALUE) {
+            throw new IllegalArgumentException("--max-failures requires --verify");
+        }
+        if (options.watch && options.filter != PathFilter.ALL) {
+            throw new IllegalArgumentException("--include and --exclude cannot be combined with --watch");
+        }
+        if (options.hardLinks && (options.chunks || options.checkpointFile != null || options.watch
+                || options.duplicates)) {
+            throw new IllegalArgumentException(
+                    "--hard-links cannot be combined with --chunks, --checkpoint, --watch or --duplicates");
+        }
+        if (options.duplicates && (options.threads > 1 || options.perDevice > 0 || options.inodeOrder)) {
+            throw new IllegalArgumentException(
+                    "--duplicates cannot be combined with --threads, --per-device or --inode-order");
+        }
+        if (options.watch && options.duplicates) {
+            throw new IllegalArgumentException("--watch and --duplicates cannot be combined");
+        }
+        if ((options.checkpointFile != null || options.merkle || options.archives || options.chunks
+                || options.sortBudget > 0) && (options.watch || options.duplicates)) {
+            throw new IllegalArgumentException("--checkpoint, --merkle, --archives, --chunks and --sort"
+                    + " cannot be combined with --watch or --duplicates");
+        }
+        if (options.checkpointFile != null && (options.merkle || options.sortBudget > 0 || options.chunks)) {
+            throw new IllegalArgumentException("--checkpoint cannot be combined with --merkle, --sort or --chunks");
+        }
+        if (options.binary && (options.checkpointFile != null || options.watch)) {
+            throw new IllegalArgumentException("--binary cannot be combined with --checkpoint or --watch");
+        }
+        options.input = Paths.get(args[pos]);
+        options.output = Paths.get(args[pos + 1]);
+        return options;
+    }
+
+}
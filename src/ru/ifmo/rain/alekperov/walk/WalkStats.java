@@ -0,0 +1,409 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Checksum;
+
+/**
+ * Collects the counters of a walk by decorating the hash function, the hasher and the manifest writer.
+ * The counters are published as an MXBean and as periodic JFR events, and every hashed file and error
+ * is recorded as a JFR event of its own while a recording is running.
+ */
+class WalkStats implements WalkStatsMXBean, AutoCloseable {
+
+    private static final String OBJECT_NAME = "ru.ifmo.rain.alekperov.walk:type=WalkStats";
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    @Name("ru.ifmo.rain.alekperov.walk.FileHashed")
+    @Label("File Hashed")
+    @Category("Walk")
+    @StackTrace(false)
+    static final class FileHashedEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("ru.ifmo.rain.alekperov.walk.Error")
+    @Label("Walk Error")
+    @Category("Walk")
+    @StackTrace(false)
+    static final class ErrorEvent extends Event {
+        @Label("Action")
+        String action;
+
+        @Label("Path")
+        String path;
+
+        @Label("Exception")
+        String exception;
+
+        @Label("Message")
+        String message;
+    }
+
+    @Name("ru.ifmo.rain.alekperov.walk.Statistics")
+    @Label("Walk Statistics")
+    @Category("Walk")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class StatisticsEvent extends Event {
+        @Label("Files")
+        long files;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Files per Second")
+        double filesPerSecond;
+
+        @Label("Bytes per Second")
+        @DataAmount(DataAmount.BYTES)
+        double bytesPerSecond;
+
+        @Label("Open Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long openTime;
+
+        @Label("Read Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long readTime;
+
+        @Label("Hash Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long hashTime;
+
+        @Label("Write Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long writeTime;
+
+        @Label("Errors")
+        long errors;
+    }
+
+    private final long start = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder openTime = new LongAdder();
+    private final LongAdder fileTime = new LongAdder();
+    private final LongAdder hashTime = new LongAdder();
+    private final LongAdder writeTime = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final AtomicLongArray sizes = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+    private final Runnable periodic = this::emitStatistics;
+    private ObjectName name;
+
+    private WalkStats() {
+    }
+
+    /**
+     * Creates the counters and publishes them. A failure to register the MXBean is reported and ignored.
+     *
+     * @return the counters.
+     */
+    static WalkStats start() {
+        final var stats = new WalkStats();
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            final var objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(stats, objectName);
+            stats.name = objectName;
+        } catch (final JMException ex) {
+            System.out.println("Cannot register the statistics MXBean: " + ex.getMessage());
+        }
+        FlightRecorder.addPeriodicEvent(StatisticsEvent.class, stats.periodic);
+        return stats;
+    }
+
+    private static void addToHistogram(final AtomicLongArray histogram, final long value) {
+        histogram.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+    }
+
+    private static long[] toArray(final AtomicLongArray histogram) {
+        final var result = new long[histogram.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * A checksum which counts the time spent in its updates.
+     */
+    private final class TimedChecksum implements Checksum {
+        private final Checksum checksum;
+
+        TimedChecksum(final Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void update(final int b) {
+            checksum.update(b);
+        }
+
+        @Override
+        public void update(final byte[] b, final int off, final int len) {
+            final long begin = System.nanoTime();
+            checksum.update(b, off, len);
+            hashTime.add(System.nanoTime() - begin);
+        }
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            final long begin = System.nanoTime();
+            checksum.update(buffer);
+            hashTime.add(System.nanoTime() - begin);
+        }
+
+        @Override
+        public long getValue() {
+            return checksum.getValue();
+        }
+
+        @Override
+        public void reset() {
+            checksum.reset();
+        }
+    }
+
+    /**
+     * Returns the function whose checksums count the hashing time.
+     */
+    HashFunction timedFunction(final HashFunction function) {
+        return new HashFunction() {
+            @Override
+            public String getName() {
+                return function.getName();
+            }
+
+            @Override
+            public int getBits() {
+                return function.getBits();
+            }
+
+            @Override
+            public Checksum newChecksum() {
+                return new TimedChecksum(function.newChecksum());
+            }
+        };
+    }
+
+    /**
+     * Returns the default hasher of {@link FileHasher#of}, which also counts the time spent opening the files.
+     */
+    FileHasher timedOpening(final HashFunction function) {
+        return (file, attrs) -> {
+            final long begin = System.nanoTime();
+            try (final var channel = FileChannel.open(file)) {
+                openTime.add(System.nanoTime() - begin);
+                return Hashing.hash(channel, function.newChecksum());
+            }
+        };
+    }
+
+    /**
+     * Returns the hasher which counts the files, their sizes and the per-file latencies.
+     */
+    FileHasher timedHasher(final FileHasher hasher) {
+        return (file, attrs) -> {
+            final var event = new FileHashedEvent();
+            event.begin();
+            final long begin = System.nanoTime();
+            final long hash = hasher.hash(file, attrs);
+            final long time = System.nanoTime() - begin;
+            event.end();
+            fileTime.add(time);
+            files.increment();
+            bytes.add(attrs.size());
+            addToHistogram(sizes, attrs.size());
+            addToHistogram(latencies, TimeUnit.NANOSECONDS.toMicros(time));
+            if (event.shouldCommit()) {
+                event.path = file.toString();
+                event.size = attrs.size();
+                event.commit();
+            }
+            return hash;
+        };
+    }
+
+    /**
+     * Returns the writer which counts the time spent writing.
+     */
+    HashWriter timedWriter(final HashWriter writer) {
+        return new HashWriter() {
+            @Override
+            public void write(final long hash, final String file) throws IOException {
+                final long begin = System.nanoTime();
+                try {
+                    writer.write(hash, file);
+                } finally {
+                    writeTime.add(System.nanoTime() - begin);
+                }
+            }
+
+            @Override
+            public void enterDirectory(final String dir) throws IOException {
+                writer.enterDirectory(dir);
+            }
+
+            @Override
+            public void exitDirectory(final String dir) throws IOException {
+                writer.exitDirectory(dir);
+            }
+        };
+    }
+
+    /**
+     * Counts an error reported to the user.
+     *
+     * @param action the failed action.
+     * @param path the path the action failed on.
+     * @param ex the cause.
+     */
+    void recordError(final String action, final String path, final Exception ex) {
+        errors.computeIfAbsent(action + ": " + ex.getClass().getSimpleName(), key -> new LongAdder()).increment();
+        final var event = new ErrorEvent();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.path = path;
+            event.exception = ex.getClass().getName();
+            event.message = ex.getMessage();
+            event.commit();
+        }
+    }
+
+    private double perSecond(final long count) {
+        final long elapsed = System.nanoTime() - start;
+        return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+    }
+
+    private void emitStatistics() {
+        final var event = new StatisticsEvent();
+        event.files = getFiles();
+        event.bytes = getBytes();
+        event.filesPerSecond = getFilesPerSecond();
+        event.bytesPerSecond = getBytesPerSecond();
+        event.openTime = getOpenTimeMillis();
+        event.readTime = getReadTimeMillis();
+        event.hashTime = getHashTimeMillis();
+        event.writeTime = getWriteTimeMillis();
+        event.errors = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        event.commit();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return perSecond(getFiles());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    @Override
+    public long getOpenTimeMillis() {
+        return toMillis(openTime.sum());
+    }
+
+    @Override
+    public long getReadTimeMillis() {
+        return toMillis(Math.max(0, fileTime.sum() - openTime.sum() - hashTime.sum()));
+    }
+
+    @Override
+    public long getHashTimeMillis() {
+        return toMillis(hashTime.sum());
+    }
+
+    @Override
+    public long getWriteTimeMillis() {
+        return toMillis(writeTime.sum());
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        final Map<String, Long> result = new TreeMap<>();
+        errors.forEach((key, count) -> result.put(key, count.sum()));
+        return result;
+    }
+
+    @Override
+    public long[] getFileSizeHistogram() {
+        return toArray(sizes);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        return toArray(latencies);
+    }
+
+    /**
+     * Prints the totals and the time split.
+     */
+    void printSummary() {
+        System.out.printf("%d files, %d bytes in %.1f s (%.0f files/s, %.0f bytes/s);"
+                        + " open %d ms, read %d ms, hash %d ms, write %d ms; errors: %s%n",
+                getFiles(), getBytes(), (System.nanoTime() - start) / 1e9, getFilesPerSecond(), getBytesPerSecond(),
+                getOpenTimeMillis(), getReadTimeMillis(), getHashTimeMillis(), getWriteTimeMillis(), getErrors());
+    }
+
+    /**
+     * Unpublishes the counters.
+     */
+    @Override
+    public void close() {
+        FlightRecorder.removePeriodicEvent(periodic);
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (final JMException ignored) {
+                // Already unregistered.
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.util.Map;
+
+/**
+ * Counters of a running {@link RecursiveWalk}, exposed over JMX with {@code --stats}.
+ * Times are summed over all the hashing threads. Histogram bucket {@code i > 0} counts the values
+ * in {@code [2^(i-1), 2^i)}, bucket {@code 0} counts zeros.
+ */
+public interface WalkStatsMXBean {
+
+    /**
+     * Returns the number of hashed files.
+     */
+    long getFiles();
+
+    /**
+     * Returns the total size of the hashed files.
+     */
+    long getBytes();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    /**
+     * Returns the time spent opening files, where the default reading is used.
+     */
+    long getOpenTimeMillis();
+
+    /**
+     * Returns the time spent hashing files, minus the time spent opening them and updating the checksums.
+     */
+    long getReadTimeMillis();
+
+    /**
+     * Returns the time spent updating the checksums.
+     */
+    long getHashTimeMillis();
+
+    /**
+     * Returns the time spent writing entries to the manifest.
+     */
+    long getWriteTimeMillis();
+
+    /**
+     * Returns the numbers of errors by the failed action and the exception type.
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * Returns the histogram of the file sizes in bytes.
+     */
+    long[] getFileSizeHistogram();
+
+    /**
+     * Returns the histogram of the per-file hashing latencies in microseconds.
+     */
+    long[] getLatencyHistogram();
+
+}
@@ -0,0 +1,26 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An alternative way to walk a tree which reports the hashes in the order
+ * of {@link Files#walkFileTree(Path, FileVisitor)}.
+ */
+interface Walker extends AutoCloseable {
+
+    /**
+     * Walks the tree and reports the hashes of its files to the writer.
+     *
+     * @param root the root of the tree.
+     * @param writer the receiver of the hashes.
+     * @throws IOException if the writer fails or the tree cannot be walked.
+     */
+    void walk(Path root, HashWriter writer) throws IOException;
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,127 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * A streaming implementation of the 64-bit <a href="https://github.com/Cyan4973/xxHash">xxHash</a> with zero seed.
+ */
+class XXHash64 implements Checksum {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long total;
+
+    XXHash64() {
+        reset();
+    }
+
+    private static long round(final long acc, final long input) {
+        return Long.rotateLeft(acc + input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long merge(final long acc, final long v) {
+        return (acc ^ round(0, v)) * PRIME_1 + PRIME_4;
+    }
+
+    private void stripe(final ByteBuffer buffer, final int index) {
+        v1 = round(v1, buffer.getLong(index));
+        v2 = round(v2, buffer.getLong(index + 8));
+        v3 = round(v3, buffer.getLong(index + 16));
+        v4 = round(v4, buffer.getLong(index + 24));
+    }
+
+    @Override
+    public void update(final int b) {
+        update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(final byte[] b, final int off, final int len) {
+        update(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        final var input = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final int length = input.remaining();
+        total += length;
+        int i = 0;
+        if (pending.position() > 0) {
+            final int count = Math.min(pending.remaining(), length);
+            pending.put(input.limit(count));
+            input.limit(length);
+            i = count;
+            if (pending.hasRemaining()) {
+                buffer.position(buffer.limit());
+                return;
+            }
+            stripe(pending, 0);
+            pending.clear();
+        }
+        for (; i + STRIPE <= length; i += STRIPE) {
+            stripe(input, i);
+        }
+        pending.put(input.position(i));
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public long getValue() {
+        long hash;
+        if (total >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = PRIME_5;
+        }
+        hash += total;
+        final int length = pending.position();
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            hash ^= round(0, pending.getLong(i));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (i + 4 <= length) {
+            hash ^= Integer.toUnsignedLong(pending.getInt(i)) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            i += 4;
+        }
+        for (; i < length; ++i) {
+            hash ^= Byte.toUnsignedLong(pending.get(i)) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    @Override
+    public void reset() {
+        v1 = PRIME_1 + PRIME_2;
+        v2 = PRIME_2;
+        v3 = 0;
+        v4 = -PRIME_1;
+        total = 0;
+        pending.clear();
+    }
+
+}
@@ -0,0 +1,152 @@
+package ru.ifmo.rain.alekperov.arrayset;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IntArraySetTest {
+
+    private static final long SEED = 5735283495872345L;
+    private static final int RANGE = 30;
+
+    private static int[] randomElements(final Random random, final int size) {
+        return random.ints(size, -RANGE, RANGE).toArray();
+    }
+
+    private static List<Integer> probes() {
+        final List<Integer> probes = new ArrayList<>();
+        for (int i = -RANGE - 2; i <= RANGE + 2; ++i) {
+            probes.add(i);
+        }
+        return probes;
+    }
+
+    private static TreeSet<Integer> reference(final int[] elements) {
+        final TreeSet<Integer> set = new TreeSet<>();
+        Arrays.stream(elements).forEach(set::add);
+        return set;
+    }
+
+    /**
+     * Checks that the primitive method returns what the boxed one does, or throws if it returns {@code null}.
+     */
+    private static void assertPrimitive(final String context, final Integer expected, final IntUnaryOperator actual,
+                                        final int e) {
+        try {
+            final int result = actual.applyAsInt(e);
+            assertEquals(context + " at " + e, expected, Integer.valueOf(result));
+        } catch (final NoSuchElementException ex) {
+            assertEquals(context + " at " + e + " threw", null, expected);
+        }
+    }
+
+    private static void checkPrimitive(final String context, final NavigableSet<Integer> expected,
+                                       final IntArraySet actual) {
+        assertArrayEquals(context, expected.stream().mapToInt(Integer::intValue).toArray(), actual.toIntArray());
+        for (final int e : probes()) {
+            assertEquals(context, expected.contains(e), actual.contains(e));
+            assertPrimitive(context + " lowerInt", expected.lower(e), actual::lowerInt, e);
+            assertPrimitive(context + " floorInt", expected.floor(e), actual::floorInt, e);
+            assertPrimitive(context + " ceilingInt", expected.ceiling(e), actual::ceilingInt, e);
+            assertPrimitive(context + " higherInt", expected.higher(e), actual::higherInt, e);
+        }
+        final var first = expected.isEmpty() ? null : expected.first();
+        final var last = expected.isEmpty() ? null : expected.last();
+        assertPrimitive(context + " firstInt", first, e -> actual.firstInt(), 0);
+        assertPrimitive(context + " lastInt", last, e -> actual.lastInt(), 0);
+    }
+
+    @Test
+    public void testSameAsTreeSet() {
+        final var random = new Random(SEED);
+        for (final int size : new int[]{0, 1, 2, 10, 50}) {
+            final var elements = randomElements(random, size);
+            NavigableSets.check("size " + size, reference(elements), new IntArraySet(elements), probes(), 2);
+        }
+    }
+
+    @Test
+    public void testPrimitiveMethods() {
+        final var random = new Random(SEED);
+        for (final int size : new int[]{0, 1, 2, 10, 50}) {
+            final var elements = randomElements(random, size);
+            final var expected = reference(elements);
+            final var actual = new IntArraySet(elements);
+            checkPrimitive("set", expected, actual);
+            checkPrimitive("descendingSet()", expected.descendingSet(), actual.descendingSet());
+            for (final int e : new int[]{-10, 0, 7}) {
+                checkPrimitive("headSet(" + e + ")", expected.headSet(e, false), actual.headSet(e));
+                checkPrimitive("tailSet(" + e + ")", expected.tailSet(e, true), actual.tailSet(e));
+                checkPrimitive("descendingSet().headSet(" + e + ", true)",
+                        expected.descendingSet().headSet(e, true), actual.descendingSet().headSet(e, true));
+                checkPrimitive("subSet(" + e + ", " + (e + 15) + ").descendingSet()",
+                        expected.subSet(e, true, e + 15, false).descendingSet(),
+                        actual.subSet(e, e + 15).descendingSet());
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final var set = new IntArraySet();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0));
+        for (final IntUnaryOperator method : List.<IntUnaryOperator>of(
+                set::lowerInt, set::floorInt, set::ceilingInt, set::higherInt,
+                e -> set.firstInt(), e -> set.lastInt())) {
+            try {
+                method.applyAsInt(0);
+                fail("NoSuchElementException expected");
+            } catch (final NoSuchElementException ignored) {
+                // Expected
+            }
+        }
+        assertEquals(null, set.floor(0));
+    }
+
+    @Test
+    public void testConstructors() {
+        final int[] elements = {3, -1, 3, 2, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        final var copy = elements.clone();
+        final var set = new IntArraySet(elements);
+        assertArrayEquals(copy, elements);
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, -1, 2, 3, Integer.MAX_VALUE}, set.toIntArray());
+        assertEquals(set, new IntArraySet(List.of(3, 2, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 2)));
+        assertEquals(Integer.MIN_VALUE, set.floorInt(Integer.MIN_VALUE));
+        assertEquals(-1, set.lowerInt(2));
+        assertEquals(Integer.MAX_VALUE, set.higherInt(3));
+    }
+
+    @Test
+    public void testInvalidSubSet() {
+        final var set = new IntArraySet(1, 2, 3, 4, 5);
+        try {
+            set.subSet(4, 2);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException ignored) {
+            // Expected
+        }
+        try {
+            set.descendingSet().subSet(2, 4);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException ignored) {
+            // Expected
+        }
+        assertArrayEquals(new int[]{4, 3}, set.descendingSet().subSet(4, 2).toIntArray());
+        assertEquals(0, set.subSet(3, 3).size());
+    }
+
+}
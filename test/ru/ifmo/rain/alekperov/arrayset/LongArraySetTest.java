@@ -0,0 +1,158 @@
+package ru.ifmo.rain.alekperov.arrayset;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.LongUnaryOperator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LongArraySetTest {
+
+    private static final long SEED = 5735283495872345L;
+    private static final int RANGE = 30;
+    /**
+     * Spreads the elements so that they differ only above the lower 32 bits.
+     */
+    private static final long SCALE = 1L << 57;
+
+    private static long[] randomElements(final Random random, final int size) {
+        return random.ints(size, -RANGE, RANGE).mapToLong(i -> i * SCALE).toArray();
+    }
+
+    private static List<Long> probes() {
+        final List<Long> probes = new ArrayList<>();
+        probes.add(Long.MIN_VALUE);
+        for (int i = -RANGE - 2; i <= RANGE + 2; ++i) {
+            probes.add(i * SCALE);
+        }
+        probes.add(Long.MAX_VALUE);
+        return probes;
+    }
+
+    private static TreeSet<Long> reference(final long[] elements) {
+        final TreeSet<Long> set = new TreeSet<>();
+        Arrays.stream(elements).forEach(set::add);
+        return set;
+    }
+
+    /**
+     * Checks that the primitive method returns what the boxed one does, or throws if it returns {@code null}.
+     */
+    private static void assertPrimitive(final String context, final Long expected, final LongUnaryOperator actual,
+                                        final long e) {
+        try {
+            final long result = actual.applyAsLong(e);
+            assertEquals(context + " at " + e, expected, Long.valueOf(result));
+        } catch (final NoSuchElementException ex) {
+            assertEquals(context + " at " + e + " threw", null, expected);
+        }
+    }
+
+    private static void checkPrimitive(final String context, final NavigableSet<Long> expected,
+                                       final LongArraySet actual) {
+        assertArrayEquals(context, expected.stream().mapToLong(Long::longValue).toArray(), actual.toLongArray());
+        for (final long e : probes()) {
+            assertEquals(context, expected.contains(e), actual.contains(e));
+            assertPrimitive(context + " lowerLong", expected.lower(e), actual::lowerLong, e);
+            assertPrimitive(context + " floorLong", expected.floor(e), actual::floorLong, e);
+            assertPrimitive(context + " ceilingLong", expected.ceiling(e), actual::ceilingLong, e);
+            assertPrimitive(context + " higherLong", expected.higher(e), actual::higherLong, e);
+        }
+        final var first = expected.isEmpty() ? null : expected.first();
+        final var last = expected.isEmpty() ? null : expected.last();
+        assertPrimitive(context + " firstLong", first, e -> actual.firstLong(), 0);
+        assertPrimitive(context + " lastLong", last, e -> actual.lastLong(), 0);
+    }
+
+    @Test
+    public void testSameAsTreeSet() {
+        final var random = new Random(SEED);
+        for (final int size : new int[]{0, 1, 2, 10, 50}) {
+            final var elements = randomElements(random, size);
+            NavigableSets.check("size " + size, reference(elements), new LongArraySet(elements), probes(), 2);
+        }
+    }
+
+    @Test
+    public void testPrimitiveMethods() {
+        final var random = new Random(SEED);
+        for (final int size : new int[]{0, 1, 2, 10, 50}) {
+            final var elements = randomElements(random, size);
+            final var expected = reference(elements);
+            final var actual = new LongArraySet(elements);
+            checkPrimitive("set", expected, actual);
+            checkPrimitive("descendingSet()", expected.descendingSet(), actual.descendingSet());
+            for (final long e : new long[]{-10 * SCALE, 0, 7 * SCALE}) {
+                checkPrimitive("headSet(" + e + ")", expected.headSet(e, false), actual.headSet(e));
+                checkPrimitive("tailSet(" + e + ")", expected.tailSet(e, true), actual.tailSet(e));
+                checkPrimitive("descendingSet().headSet(" + e + ", true)",
+                        expected.descendingSet().headSet(e, true), actual.descendingSet().headSet(e, true));
+                checkPrimitive("subSet(" + e + ", " + (e + 15 * SCALE) + ").descendingSet()",
+                        expected.subSet(e, true, e + 15 * SCALE, false).descendingSet(),
+                        actual.subSet(e, e + 15 * SCALE).descendingSet());
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final var set = new LongArraySet();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0));
+        for (final LongUnaryOperator method : List.<LongUnaryOperator>of(
+                set::lowerLong, set::floorLong, set::ceilingLong, set::higherLong,
+                e -> set.firstLong(), e -> set.lastLong())) {
+            try {
+                method.applyAsLong(0);
+                fail("NoSuchElementException expected");
+            } catch (final NoSuchElementException ignored) {
+                // Expected
+            }
+        }
+        assertEquals(null, set.floor(0L));
+    }
+
+    @Test
+    public void testConstructors() {
+        final long[] elements = {3, -1, 3, 2, -1, Long.MIN_VALUE, Long.MAX_VALUE};
+        final var copy = elements.clone();
+        final var set = new LongArraySet(elements);
+        assertArrayEquals(copy, elements);
+        assertArrayEquals(new long[]{Long.MIN_VALUE, -1, 2, 3, Long.MAX_VALUE}, set.toLongArray());
+        assertEquals(set, new LongArraySet(List.of(3L, 2L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 2L)));
+        assertEquals(Long.MIN_VALUE, set.floorLong(Long.MIN_VALUE));
+        assertEquals(-1, set.lowerLong(2));
+        assertEquals(Long.MAX_VALUE, set.higherLong(3));
+    }
+
+    @Test
+    public void testInvalidSubSet() {
+        final var set = new LongArraySet(1, 2, 3, 4, 5);
+        try {
+            set.subSet(4L, 2L);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException ignored) {
+            // Expected
+        }
+        try {
+            set.descendingSet().subSet(2L, 4L);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException ignored) {
+            // Expected
+        }
+        assertArrayEquals(new long[]{4, 3}, set.descendingSet().subSet(4L, 2L).toLongArray());
+        assertEquals(0, set.subSet(3L, 3L).size());
+    }
+
+}
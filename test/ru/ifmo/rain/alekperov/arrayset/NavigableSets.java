@@ -0,0 +1,99 @@
+package ru.ifmo.rain.alekperov.arrayset;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks a set against a reference {@link java.util.TreeSet} with the same elements,
+ * recursively through its descending set and its views.
+ */
+final class NavigableSets {
+
+    private NavigableSets() {
+    }
+
+    private static <E> List<E> list(final Iterator<E> iterator) {
+        final List<E> result = new ArrayList<>();
+        iterator.forEachRemaining(result::add);
+        return result;
+    }
+
+    private static void assertSameOutcome(final String message, final Supplier<?> expected, final Supplier<?> actual) {
+        Object expectedResult;
+        try {
+            expectedResult = expected.get();
+        } catch (final RuntimeException ex) {
+            expectedResult = ex.getClass();
+        }
+        Object actualResult;
+        try {
+            actualResult = actual.get();
+        } catch (final RuntimeException ex) {
+            actualResult = ex.getClass();
+        }
+        assertEquals(message, expectedResult, actualResult);
+    }
+
+    /**
+     * Checks the set and its descending set and views, {@code depth} levels deep.
+     *
+     * @param probes the elements to look up, within and around the range of the elements.
+     */
+    static <E> void check(final String context, final NavigableSet<E> expected, final NavigableSet<E> actual,
+                          final List<E> probes, final int depth) {
+        assertEquals(context, new ArrayList<>(expected), new ArrayList<>(actual));
+        assertEquals(context, list(expected.descendingIterator()), list(actual.descendingIterator()));
+        assertEquals(context, expected.size(), actual.size());
+        assertEquals(context, expected.isEmpty(), actual.isEmpty());
+        assertEquals(context, expected, actual);
+        assertEquals(context, expected.hashCode(), actual.hashCode());
+        assertSameOutcome(context + " first", expected::first, actual::first);
+        assertSameOutcome(context + " last", expected::last, actual::last);
+        for (final var e : probes) {
+            final var at = context + " at " + e;
+            assertEquals(at, expected.contains(e), actual.contains(e));
+            assertEquals(at, expected.lower(e), actual.lower(e));
+            assertEquals(at, expected.floor(e), actual.floor(e));
+            assertEquals(at, expected.ceiling(e), actual.ceiling(e));
+            assertEquals(at, expected.higher(e), actual.higher(e));
+        }
+        if (depth == 0) {
+            return;
+        }
+        check(context + ".descendingSet()", expected.descendingSet(), actual.descendingSet(), probes, depth - 1);
+        for (int i = 0; i < probes.size(); i += 3) {
+            final var from = probes.get(i);
+            final var to = probes.get((i + 5) % probes.size());
+            for (final boolean inclusive : new boolean[]{false, true}) {
+                checkView(context + ".headSet(" + from + ", " + inclusive + ")",
+                        () -> expected.headSet(from, inclusive), () -> actual.headSet(from, inclusive), probes, depth);
+                checkView(context + ".tailSet(" + from + ", " + inclusive + ")",
+                        () -> expected.tailSet(from, inclusive), () -> actual.tailSet(from, inclusive), probes, depth);
+                checkView(context + ".subSet(" + from + ", " + inclusive + ", " + to + ", " + !inclusive + ")",
+                        () -> expected.subSet(from, inclusive, to, !inclusive),
+                        () -> actual.subSet(from, inclusive, to, !inclusive), probes, depth);
+            }
+        }
+    }
+
+    /**
+     * Checks a view unless the reference set rejects its bounds: the views of {@link java.util.TreeSet}
+     * also reject the bounds outside of their own ones, which array sets allow.
+     */
+    private static <E> void checkView(final String context, final Supplier<NavigableSet<E>> expected,
+                                      final Supplier<NavigableSet<E>> actual, final List<E> probes, final int depth) {
+        final NavigableSet<E> expectedView;
+        try {
+            expectedView = expected.get();
+        } catch (final IllegalArgumentException ex) {
+            return;
+        }
+        check(context, expectedView, actual.get(), probes, depth - 1);
+    }
+
+}
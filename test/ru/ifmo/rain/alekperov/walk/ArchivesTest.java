@@ -0,0 +1,157 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArchivesTest extends WalkTestBase {
+
+    private static byte[] zip(final Map<String, byte[]> entries, final Charset charset) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var zos = new ZipOutputStream(bytes, charset)) {
+            for (final var e : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(e.getKey()));
+                zos.write(e.getValue());
+                zos.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String line(final byte[] content, final String file) {
+        final var checksum = StandardHashFunction.FNV_32.newChecksum();
+        checksum.update(content, 0, content.length);
+        return String.format("%08x %s", checksum.getValue(), file);
+    }
+
+    private static Map<String, byte[]> entries(final Random random) {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.txt", randomBytes(random, 100));
+        entries.put("dir/b.bin", randomBytes(random, 70000));
+        entries.put("empty", new byte[0]);
+        return entries;
+    }
+
+    @Test
+    public void testEntries() throws IOException {
+        final var random = new Random(SEED);
+        final var inner = entries(random);
+        final var innerJar = zip(inner, StandardCharsets.UTF_8);
+        final Map<String, byte[]> outer = new LinkedHashMap<>(entries(random));
+        outer.put("lib/inner.jar", innerJar);
+        final var outerZip = zip(outer, StandardCharsets.UTF_8);
+        final var file = write(newDir("tree").resolve("outer.zip"), outerZip);
+
+        final List<String> expected = new ArrayList<>();
+        expected.add(line(outerZip, file.toString()));
+        for (final var e : outer.entrySet()) {
+            final var name = file + "!/" + e.getKey();
+            expected.add(line(e.getValue(), name));
+            if (e.getValue() == innerJar) {
+                inner.forEach((key, value) -> expected.add(line(value, name + "!/" + key)));
+            }
+        }
+        expected.add("");
+        assertEquals(expected, walk(strings(file), "--archives"));
+    }
+
+    @Test
+    public void testLegacyNames() throws IOException {
+        final var random = new Random(SEED);
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("r\u00e9sum\u00e9.txt", randomBytes(random, 10));
+        entries.put("\u00fcber/\u00e4.txt", randomBytes(random, 20));
+        final var zip = zip(entries, Charset.forName("IBM437"));
+        final var dir = newDir("tree");
+        final var file = write(dir.resolve("legacy.zip"), zip);
+        final var after = write(dir.resolve("z.txt"), "after");
+
+        final List<String> expected = new ArrayList<>();
+        expected.add(line(zip, file.toString()));
+        entries.forEach((name, content) -> expected.add(line(content, file + "!/" + name)));
+        expected.add(line("after".getBytes(StandardCharsets.UTF_8), after.toString()));
+        expected.add("");
+        assertEquals(expected, walk(strings(dir), "--archives"));
+    }
+
+    @Test
+    public void testCorruptArchives() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        final var garbage = write(dir.resolve("garbage.jar"), randomBytes(random, 1000));
+        final var entries = entries(random);
+        final var zip = zip(entries, StandardCharsets.UTF_8);
+        final var truncated = new byte[zip.length / 2];
+        System.arraycopy(zip, 0, truncated, 0, truncated.length);
+        final var cut = write(dir.resolve("truncated.zip"), truncated);
+
+        final var manifest = walk(strings(dir), "--archives");
+        assertTrue(manifest.contains(line(Files.readAllBytes(garbage), garbage.toString())));
+        assertTrue(manifest.contains(line(truncated, cut.toString())));
+        assertTrue(manifest.contains(line(entries.get("a.txt"), cut + "!/a.txt")));
+    }
+
+    @Test
+    public void testWalkers() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = createTree(newDir("tree"), random, 2);
+        for (int i = 0; i < 20; ++i) {
+            write(dir.resolve("a" + i + ".zip"), zip(entries(random), StandardCharsets.UTF_8));
+        }
+        final var roots = strings(dir);
+        final var expected = walk(roots, "--archives");
+        assertEquals(expected, walk(roots, "--archives", "--threads", "4"));
+        assertEquals(expected, walk(roots, "--archives", "--per-device", "4"));
+        assertEquals(expected, walk(roots, "--archives", "--inode-order"));
+        assertEquals(expected, walk(roots, "--archives", "--hard-links"));
+        assertEquals(expected, walk(roots, "--archives", "--readahead", "4"));
+        assertEquals(expected, walk(roots, "--archives", "--direct"));
+        final var cache = folder.getRoot().toPath().resolve("cache.bin").toString();
+        assertEquals(expected, walk(roots, "--archives", "--cache", cache));
+        assertEquals(expected, walk(roots, "--archives", "--cache", cache));
+    }
+
+    @Test
+    public void testOneRead() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        final var zip = zip(entries(random), StandardCharsets.UTF_8);
+        final var archive = write(dir.resolve("a.zip"), zip);
+        final var other = write(dir.resolve("b.txt"), "other");
+        final var function = StandardHashFunction.FNV_32;
+        final var archives = new ArchiveHasher(function);
+        final AtomicInteger reads = new AtomicInteger();
+        final var reader = FileHasher.of(function);
+        final var hasher = archives.hashing(archives.reading((file, attrs) -> {
+            reads.incrementAndGet();
+            return reader.hash(file, attrs);
+        }));
+        // The archive is hashed from the stream its entries are read from, other files are left to the reader
+        assertEquals(reader.hash(archive, null), hasher.hash(archive, null));
+        assertEquals(0, reads.get());
+        assertEquals(entries(new Random(SEED)).size(), archives.take(archive.toString()).size());
+        assertEquals(reader.hash(other, null), hasher.hash(other, null));
+        assertEquals(1, reads.get());
+
+        // The entries are still read when the hash is found without reading the archive
+        final var cached = archives.hashing((file, attrs) -> 42);
+        assertEquals(42, cached.hash(archive, null));
+        assertEquals(entries(new Random(SEED)).size(), archives.take(archive.toString()).size());
+    }
+
+}
@@ -0,0 +1,118 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTest extends WalkTestBase {
+
+    private Path input;
+    private Path output;
+    private Path file;
+
+    private List<String> createRoots() throws IOException {
+        final var random = new Random(SEED);
+        final var roots = strings(createTree(newDir("a"), random, 2), createTree(newDir("b"), random, 2),
+                createTree(newDir("c"), random, 1));
+        final var dir = folder.getRoot().toPath();
+        input = Files.write(dir.resolve("input.txt"), roots, StandardCharsets.UTF_8);
+        output = dir.resolve("output.txt");
+        file = dir.resolve("walk.checkpoint");
+        return roots;
+    }
+
+    /**
+     * Saves the checkpoint of a walk interrupted after the given entries of the given root,
+     * and leaves garbage after them in the manifest.
+     */
+    private void interrupt(final List<String> roots, final int root, final int entries) throws IOException {
+        long offset = 0;
+        for (int i = 0; i < root; ++i) {
+            offset += walkBytes(List.of(roots.get(i))).length;
+        }
+        final var lines = walk(List.of(roots.get(root)));
+        for (int i = 0; i < entries; ++i) {
+            offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        final var full = walkBytes(roots);
+        final var manifest = Arrays.copyOf(full, (int) offset + 100);
+        Arrays.fill(manifest, (int) offset, manifest.length, (byte) 'x');
+        Files.write(output, manifest);
+        Checkpoint.load(file, "fnv32", input).save(root, entries, lines.get(entries - 1).substring(9), offset);
+    }
+
+    private void resume(final String... options) {
+        final var args = Arrays.copyOf(options, options.length + 4);
+        args[options.length] = "--checkpoint";
+        args[options.length + 1] = file.toString();
+        args[options.length + 2] = input.toString();
+        args[options.length + 3] = output.toString();
+        run(args);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        createRoots();
+        final var started = Checkpoint.load(file, "fnv32", input);
+        assertFalse(started.isResumed());
+        started.save(3, 5, "x/y", 100);
+        final var loaded = Checkpoint.load(file, "fnv32", input);
+        assertTrue(loaded.isResumed());
+        assertEquals(3, loaded.getLine());
+        assertEquals(5, loaded.getEntries());
+        assertEquals("x/y", loaded.getLastEntry());
+        assertEquals(100, loaded.getOffset());
+        loaded.delete();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        final var roots = createRoots();
+        final var expected = walkBytes(roots);
+        interrupt(roots, 1, 3);
+        resume();
+        assertArrayEquals(expected, Files.readAllBytes(output));
+        assertFalse(Files.exists(file));
+
+        interrupt(roots, 2, 1);
+        resume("--threads", "4");
+        assertArrayEquals(expected, Files.readAllBytes(output));
+    }
+
+    @Test
+    public void testMismatch() throws IOException {
+        final var roots = createRoots();
+        interrupt(roots, 1, 2);
+        final var interrupted = Files.readAllBytes(output);
+        resume("--hash", "xxh64");
+        assertTrue(printed, printed.contains("another hash function"));
+        assertArrayEquals(interrupted, Files.readAllBytes(output));
+        assertTrue(Files.exists(file));
+
+        Files.writeString(input, roots.get(0) + "\n", StandardCharsets.UTF_8);
+        resume();
+        assertTrue(printed, printed.contains("input file has changed"));
+        assertArrayEquals(interrupted, Files.readAllBytes(output));
+    }
+
+    @Test
+    public void testChunksRejected() throws IOException {
+        createRoots();
+        resume("--chunks");
+        assertTrue(printed, printed.contains("--chunks"));
+        assertFalse(Files.exists(output));
+    }
+
+}
@@ -0,0 +1,102 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkingTest extends WalkTestBase {
+
+    private static final HashWriter NOWHERE = (hash, file) -> {};
+
+    private static ChunkingHasher.Chunks chunk(final ChunkingHasher hasher, final Path file) throws IOException {
+        hasher.hash(file, null);
+        return hasher.take(file.toString());
+    }
+
+    private static Set<String> keys(final ChunkingHasher.Chunks chunks) {
+        final Set<String> keys = new HashSet<>();
+        for (int i = 0; i < chunks.size(); ++i) {
+            keys.add(chunks.getHash(i) + "+" + chunks.getLength(i));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testBoundariesAfterInsert() throws IOException {
+        final var random = new Random(SEED);
+        final var original = randomBytes(random, 1 << 20);
+        final var inserted = new byte[original.length + 100];
+        final int at = 300_000;
+        System.arraycopy(original, 0, inserted, 0, at);
+        System.arraycopy(randomBytes(random, 100), 0, inserted, at, 100);
+        System.arraycopy(original, at, inserted, at + 100, original.length - at);
+
+        final var hasher = new ChunkingHasher(StandardHashFunction.XXH_64);
+        final var before = chunk(hasher, write(folder.getRoot().toPath().resolve("before"), original));
+        final var after = chunk(hasher, write(folder.getRoot().toPath().resolve("after"), inserted));
+        long length = 0;
+        for (int i = 0; i < after.size(); ++i) {
+            assertTrue(i == after.size() - 1 || after.getLength(i) >= 1 << 11);
+            assertTrue(after.getLength(i) <= 1 << 16);
+            length += after.getLength(i);
+        }
+        assertEquals(inserted.length, length);
+        // Only the chunk with the insert and at most the next one differ, the boundaries realign after them
+        final var changed = keys(after);
+        changed.removeAll(keys(before));
+        assertTrue(changed.toString(), !changed.isEmpty() && changed.size() <= 2);
+        assertTrue(keys(before).size() - keys(after).size() <= 1);
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        final var shared = randomBytes(random, 200_000);
+        write(dir.resolve("a"), shared);
+        write(dir.resolve("b"), shared);
+        write(dir.resolve("c"), randomBytes(random, 100_000));
+        write(dir.resolve("d").resolve("e"), new byte[0]);
+
+        final var hasher = new ChunkingHasher(StandardHashFunction.XXH_64);
+        final var writer = new ChunkWriter(NOWHERE, hasher);
+        for (final var name : new String[]{"a", "b", "c"}) {
+            final var file = dir.resolve(name);
+            writer.write(hasher.hash(file, null), file.toString());
+        }
+        final var a = chunk(hasher, dir.resolve("a"));
+        final var c = chunk(hasher, dir.resolve("c"));
+        assertEquals(a.size() + c.size(), writer.getUniqueChunks());
+        assertEquals(300_000, writer.getUniqueBytes());
+
+        walk(strings(dir), "--chunks", "--hash", "xxh64");
+        final long all = 2L * a.size() + c.size();
+        assertTrue(printed, printed.contains(String.format(
+                "%d chunks, 500000 bytes; unique: %d chunks, 300000 bytes; shared: 200000 bytes (40.0%%)",
+                all, a.size() + c.size())));
+    }
+
+    @Test
+    public void testSampledCounts() {
+        final var writer = new ChunkWriter(NOWHERE, null, 1 << 10);
+        final int distinct = 100_000;
+        for (int repeat = 0; repeat < 3; ++repeat) {
+            for (int i = 0; i < distinct; ++i) {
+                writer.count(i * 31L, 1000 + i % 100);
+            }
+        }
+        // The table holds a sample of about a thousand chunks, so the estimates are off by a few percent at most
+        final double chunks = writer.getUniqueChunks();
+        final double bytes = writer.getUniqueBytes();
+        assertEquals(distinct, chunks, distinct * 0.1);
+        assertEquals(distinct * 1049.5, bytes, distinct * 1049.5 * 0.1);
+    }
+
+}
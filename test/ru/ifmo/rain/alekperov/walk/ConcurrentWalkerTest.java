@@ -0,0 +1,85 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentWalkerTest extends WalkTestBase {
+
+    private static final int PER_DEVICE = 2;
+
+    @Test
+    public void testThreadsAreBounded() throws IOException {
+        final var dir = newDir("tree");
+        for (int i = 0; i < 3000; ++i) {
+            write(dir.resolve("f" + i), new byte[0]);
+        }
+        final var running = new AtomicInteger();
+        final var maxRunning = new AtomicInteger();
+        final FileHasher hasher = (file, attrs) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(0, 100_000);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return 1;
+        };
+        final var threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        final int before = threads.getPeakThreadCount();
+        final var written = new AtomicInteger();
+        try (final var walker = new ConcurrentWalker(hasher, PER_DEVICE, PathFilter.ALL, FileTree.BASIC)) {
+            walker.walk(dir, (hash, file) -> written.incrementAndGet());
+        }
+        assertEquals(3000, written.get());
+        assertTrue("running: " + maxRunning.get(), maxRunning.get() <= PER_DEVICE);
+        final int created = threads.getPeakThreadCount() - before;
+        // Virtual threads run on carrier threads, one per processor
+        assertTrue("threads: " + created, created <= 4 * PER_DEVICE + Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void testBusyDeviceDoesNotBlockOthers() throws IOException, InterruptedException {
+        final var dir = newDir("tree");
+        for (int i = 0; i < 20; ++i) {
+            write(dir.resolve("f" + i), new byte[0]);
+        }
+        final Set<Object> slow = ConcurrentHashMap.newKeySet();
+        final var fast = new CountDownLatch(20 - 3);
+        final var waited = new AtomicBoolean(true);
+        final FileHasher hasher = (file, attrs) -> {
+            if (!slow.contains(attrs.fileKey())) {
+                fast.countDown();
+                return 1;
+            }
+            try {
+                if (!fast.await(10, TimeUnit.SECONDS)) {
+                    waited.set(false);
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return 2;
+        };
+        // The first files visited are on a device of their own, which only lets one of them be hashed
+        // until all the files of the other device are hashed
+        try (final var walker = new ConcurrentWalker(hasher, 1, PathFilter.ALL, FileTree.BASIC,
+                (root, attrs) -> slow.size() < 3 && slow.add(attrs.fileKey()) ? "slow" : "fast")) {
+            walker.walk(dir, (hash, file) -> {});
+        }
+        assertTrue(waited.get());
+    }
+
+}
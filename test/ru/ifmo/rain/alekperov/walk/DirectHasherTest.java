@@ -0,0 +1,201 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class DirectHasherTest extends WalkTestBase {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int[] SIZES = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, 3 * BLOCK_SIZE + 5, (1 << 20) - 1, 1 << 20,
+            (1 << 20) + BLOCK_SIZE, 3 * (1 << 20) + 77};
+
+    /**
+     * Returns at most the given number of bytes from every read.
+     */
+    private static final class ShortReads extends FileChannel {
+        private final FileChannel channel;
+        private final int max;
+
+        ShortReads(final FileChannel channel, final int max) {
+            this.channel = channel;
+            this.max = max;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final int limit = dst.limit();
+            dst.limit(Math.min(limit, dst.position() + max));
+            try {
+                return channel.read(dst);
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public long read(final ByteBuffer[] dsts, final int offset, final int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(final long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(final long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void force(final boolean metaData) {
+        }
+
+        @Override
+        public long transferTo(final long position, final long count, final WritableByteChannel target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel src, final long position, final long count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(final ByteBuffer dst, final long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int write(final ByteBuffer src, final long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(final MapMode mode, final long position, final long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock lock(final long position, final long size, final boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(final long position, final long size, final boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static long expected(final Path file) throws IOException {
+        final var checksum = StandardHashFunction.FNV_32.newChecksum();
+        final var bytes = Files.readAllBytes(file);
+        checksum.update(bytes, 0, bytes.length);
+        return checksum.getValue();
+    }
+
+    private Path createFile(final Random random, final int size) throws IOException {
+        return write(folder.getRoot().toPath().resolve("f" + size), randomBytes(random, size));
+    }
+
+    @Test
+    public void testShortReads() throws IOException {
+        final var random = new Random(SEED);
+        final var hasher = new DirectHasher(StandardHashFunction.FNV_32, FileHasher.of(StandardHashFunction.FNV_32));
+        for (final int size : SIZES) {
+            final var file = createFile(random, size);
+            for (final int max : new int[]{1 << 20, 8 * BLOCK_SIZE, BLOCK_SIZE, 1000, 3 * BLOCK_SIZE + 1}) {
+                try (final var channel = new ShortReads(FileChannel.open(file), max)) {
+                    assertEquals(size + " by " + max, expected(file), hasher.hashDirect(channel, file, BLOCK_SIZE));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadErrorsKeepDirectIo() throws IOException {
+        final var random = new Random(SEED);
+        final var files = List.of(createFile(random, 3 * BLOCK_SIZE), createFile(random, 5 * BLOCK_SIZE));
+        try (final var channel = FileChannel.open(files.get(0), StandardOpenOption.READ, ExtendedOpenOption.DIRECT)) {
+            assertNotNull(channel);
+        } catch (final IOException | UnsupportedOperationException ex) {
+            Assume.assumeNoException("The temporary directory does not support direct I/O", ex);
+        }
+        final var direct = new AtomicInteger();
+        final var hasher = new DirectHasher(StandardHashFunction.FNV_32, FileHasher.of(StandardHashFunction.FNV_32)) {
+            @Override
+            long hashDirect(final FileChannel channel, final Path file, final int blockSize) throws IOException {
+                if (direct.incrementAndGet() == 1) {
+                    throw new IOException("Transient error");
+                }
+                return super.hashDirect(channel, file, blockSize);
+            }
+        };
+        for (final var file : files) {
+            final var attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            assertEquals(expected(file), hasher.hash(file, attrs));
+        }
+        assertEquals(2, direct.get());
+    }
+
+    @Test
+    public void testWalk() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        for (final int size : SIZES) {
+            write(dir.resolve("f" + size), randomBytes(random, size));
+        }
+        createTree(dir.resolve("tree"), random, 2);
+        final var roots = strings(dir);
+        for (final var function : StandardHashFunction.values()) {
+            assertEquals(walk(roots, "--hash", function.getName()), walk(roots, "--hash", function.getName(), "--direct"));
+        }
+        assertEquals(walk(roots), walk(roots, "--direct", "--threads", "4"));
+    }
+
+}
@@ -0,0 +1,148 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicatesTest extends WalkTestBase {
+
+    /**
+     * Returns the clusters of the manifest as sets of paths.
+     */
+    private static List<Set<String>> clusters(final List<String> manifest) {
+        final List<Set<String>> clusters = new ArrayList<>();
+        Set<String> cluster = new HashSet<>();
+        for (final var line : manifest) {
+            if (!line.isEmpty()) {
+                cluster.add(line.substring(line.indexOf(' ') + 1));
+            } else if (!cluster.isEmpty()) {
+                clusters.add(cluster);
+                cluster = new HashSet<>();
+            }
+        }
+        if (!cluster.isEmpty()) {
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    /**
+     * Creates files of equal sizes and samples which differ only in the middle.
+     */
+    private static List<Path> createSimilar(final Path dir, final Random random, final int size) throws IOException {
+        final var content = randomBytes(random, size);
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            content[size / 2] = (byte) i;
+            files.add(write(dir.resolve(size + "-" + i), content));
+            files.add(write(dir.resolve(size + "-" + i + "-copy"), content));
+        }
+        return files;
+    }
+
+    @Test
+    public void testClusters() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        final var small = createSimilar(dir, random, 5000);
+        final var large = createSimilar(dir, random, 3 << 20);
+        write(dir.resolve("unique"), randomBytes(random, 5000));
+
+        final var clusters = clusters(walk(strings(dir), "--duplicates"));
+        assertEquals(6, clusters.size());
+        for (final var files : List.of(small, large)) {
+            for (int i = 0; i < files.size(); i += 2) {
+                assertTrue(clusters.contains(Set.of(files.get(i).toString(), files.get(i + 1).toString())));
+            }
+        }
+    }
+
+    @Test
+    public void testCollisions() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        final var files = createSimilar(dir, random, 100000);
+        final var output = folder.getRoot().toPath().resolve("duplicates.txt");
+        // Every full hash collides
+        final var finder = new DuplicateFinder(StandardHashFunction.FNV_32, (file, attrs) -> 42, PathFilter.ALL);
+        finder.add(dir);
+        try (final var writer = new ManifestWriter(output, 32)) {
+            finder.write(writer);
+        }
+        final var clusters = clusters(Files.readAllLines(output));
+        assertEquals(3, clusters.size());
+        for (int i = 0; i < files.size(); i += 2) {
+            assertTrue(clusters.contains(Set.of(files.get(i).toString(), files.get(i + 1).toString())));
+        }
+    }
+
+    @Test
+    public void testLargeGroups() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        final var content = randomBytes(random, 10000);
+        final List<Set<String>> expected = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            content[5000] = (byte) i;
+            final Set<String> cluster = new HashSet<>();
+            for (int j = 0; j < DuplicateFinder.MAX_OPEN + 50; ++j) {
+                cluster.add(write(dir.resolve(i + "-" + j), content).toString());
+            }
+            expected.add(cluster);
+            content[5000] = (byte) (i + 2);
+            write(dir.resolve(i + "-unique"), content);
+        }
+        final var output = folder.getRoot().toPath().resolve("duplicates.txt");
+        // Every full hash collides, so the groups stay larger than the number of files kept open
+        final var finder = new DuplicateFinder(StandardHashFunction.FNV_32, (file, attrs) -> 42, PathFilter.ALL);
+        finder.add(dir);
+        try (final var writer = new ManifestWriter(output, 32)) {
+            finder.write(writer);
+        }
+        final var lines = Files.readAllLines(output);
+        final var clusters = clusters(lines);
+        assertEquals(2, clusters.size());
+        assertTrue(clusters.containsAll(expected));
+
+        final var checksum = StandardHashFunction.FNV_32.newChecksum();
+        content[5000] = 0;
+        checksum.update(content, 0, content.length);
+        final var hash = String.format("%08x ", checksum.getValue());
+        assertEquals(DuplicateFinder.MAX_OPEN + 50, lines.stream().filter(line -> line.startsWith(hash)).count());
+    }
+
+    @Test
+    public void testInvalidPaths() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        createSimilar(dir, random, 5000);
+
+        final var manifest = walk(List.of(dir.toString(), "invalid\0path"), "--duplicates");
+        assertTrue(printed, printed.contains("Invalid path"));
+        assertEquals(3, clusters(manifest).size());
+        assertTrue(manifest.stream().noneMatch(line -> line.contains("invalid")));
+    }
+
+    @Test
+    public void testConcurrentWalkersRejected() throws IOException {
+        final var roots = strings(createTree(newDir("tree"), new Random(SEED), 1));
+        for (final var option : List.of(List.of("--threads", "2"), List.of("--per-device", "2"), List.of("--inode-order"))) {
+            final var args = new ArrayList<>(option);
+            args.add("--duplicates");
+            assertNull(walk(roots, args.toArray(String[]::new)));
+            assertTrue(printed, printed.contains("--duplicates cannot be combined"));
+        }
+    }
+
+}
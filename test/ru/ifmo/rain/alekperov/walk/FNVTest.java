@@ -0,0 +1,81 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+import static org.junit.Assert.assertEquals;
+
+public class FNVTest extends WalkTestBase {
+
+    private static final String FOX = "The quick brown fox jumps over the lazy dog";
+
+    private static long hash(final Checksum checksum, final String s) {
+        final var bytes = s.getBytes(StandardCharsets.US_ASCII);
+        checksum.update(bytes, 0, bytes.length);
+        return checksum.getValue();
+    }
+
+    /**
+     * Hashes a byte at a time, which the word-at-a-time loops must agree with.
+     */
+    private static long reference(final Checksum checksum, final byte[] bytes, final int off, final int len) {
+        for (int i = off; i < off + len; ++i) {
+            checksum.update(bytes[i]);
+        }
+        return checksum.getValue();
+    }
+
+    @Test
+    public void testKnownAnswers() throws IOException {
+        assertEquals(0x811c9dc5L, hash(new FNV.Hash32(), ""));
+        assertEquals(0x050c5d7eL, hash(new FNV.Hash32(), "a"));
+        assertEquals(0x31f0b262L, hash(new FNV.Hash32(), "foobar"));
+        assertEquals(0xe9c86c6eL, hash(new FNV.Hash32(), FOX));
+
+        assertEquals(0xcbf29ce484222325L, hash(new FNV.Hash64a(), ""));
+        assertEquals(0xaf63dc4c8601ec8cL, hash(new FNV.Hash64a(), "a"));
+        assertEquals(0x85944171f73967e8L, hash(new FNV.Hash64a(), "foobar"));
+        assertEquals(0xf3f9b7f5e7e47110L, hash(new FNV.Hash64a(), FOX));
+
+        final var fox = FOX.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xe9c86c6e, FNV.get32BitHash(new ByteArrayInputStream(fox)));
+    }
+
+    @Test
+    public void testWordsAgreeWithBytes() {
+        final var bytes = randomBytes(new Random(SEED), 64);
+        for (final Supplier<Checksum> function : List.<Supplier<Checksum>>of(
+                FNV.Hash32::new, FNV.Hash64a::new)) {
+            for (int off = 0; off < 8; ++off) {
+                for (int len = 0; off + len <= bytes.length; ++len) {
+                    final var context = "off " + off + ", len " + len;
+                    final long expected = reference(function.get(), bytes, off, len);
+
+                    final var array = function.get();
+                    array.update(bytes, off, len);
+                    assertEquals(context, expected, array.getValue());
+
+                    final var heap = function.get();
+                    heap.update(ByteBuffer.wrap(bytes, off, len));
+                    assertEquals(context + " heap", expected, heap.getValue());
+
+                    final var direct = ByteBuffer.allocateDirect(bytes.length);
+                    direct.put(bytes).position(off).limit(off + len);
+                    final var directChecksum = function.get();
+                    directChecksum.update(direct);
+                    assertEquals(context + " direct", expected, directChecksum.getValue());
+                    assertEquals(context + " direct position", off + len, direct.position());
+                }
+            }
+        }
+    }
+
+}
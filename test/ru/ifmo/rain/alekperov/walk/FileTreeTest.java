@@ -0,0 +1,85 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileTreeTest extends WalkTestBase {
+
+    /**
+     * Records the visited paths, skipping the subtrees of the directories named {@code d1}
+     * and the siblings after the files named {@code f2.txt}.
+     */
+    private static List<String> record(final FileTree tree, final Path root) throws IOException {
+        final List<String> events = new ArrayList<>();
+        tree.walk(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                events.add("enter " + dir);
+                return dir.endsWith("d1") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                events.add("file " + file + " " + attrs.size());
+                return file.endsWith("f2.txt") ? FileVisitResult.SKIP_SIBLINGS : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException ex) {
+                events.add("failed " + file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) {
+                events.add("exit " + dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return events;
+    }
+
+    @Test
+    public void testSameAsWalkFileTree() throws IOException {
+        final var dir = createTree(newDir("tree"), new Random(SEED), 4);
+        for (final var root : List.of(dir, dir.resolve("missing"), dir.resolve("f0.bin"))) {
+            assertEquals(record(FileTree.BASIC, root), record(FileTree.UNIX, root));
+        }
+    }
+
+    @Test
+    public void testDeepTree() throws IOException, InterruptedException {
+        final var root = newDir("tree");
+        var dir = root;
+        for (int i = 0; i < 1000; ++i) {
+            dir = dir.resolve("d");
+        }
+        write(Files.createDirectories(dir).resolve("file"), "deep");
+        final var expected = record(FileTree.BASIC, root);
+        final var events = new AtomicReference<List<String>>();
+        // A small stack overflows if every level of the tree takes a few frames
+        final var thread = new Thread(null, () -> {
+            try {
+                events.set(record(FileTree.UNIX, root));
+            } catch (final IOException ex) {
+                throw new AssertionError(ex);
+            }
+        }, "deep", 1 << 16);
+        thread.start();
+        thread.join();
+        assertEquals(expected, events.get());
+    }
+
+}
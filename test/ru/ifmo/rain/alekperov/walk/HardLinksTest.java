@@ -0,0 +1,135 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class HardLinksTest extends WalkTestBase {
+
+    private static final String[][] WALKERS = {{}, {"--threads", "4"}, {"--per-device", "2"}, {"--inode-order"}};
+
+    private static String[] withLinks(final String... options) {
+        final var args = new String[options.length + 1];
+        args[0] = "--hard-links";
+        System.arraycopy(options, 0, args, 1, options.length);
+        return args;
+    }
+
+    private static long countTemporaryFiles() throws IOException {
+        try (final Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("walk-links")).count();
+        }
+    }
+
+    @Test
+    public void testWithoutLinks() throws IOException {
+        final var dir = createTree(newDir("tree"), new Random(SEED), 3);
+        final var roots = strings(dir, dir.resolve("missing"), dir.resolve("f0.bin"));
+        final var expected = walk(roots);
+        for (final var options : WALKERS) {
+            assertEquals(expected, walk(roots, withLinks(options)));
+        }
+    }
+
+    @Test
+    public void testGroups() throws IOException {
+        final long temporary = countTemporaryFiles();
+        final var random = new Random(SEED);
+        final var dir = createTree(newDir("tree"), random, 2);
+        final List<List<Path>> groups = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            final var file = write(dir.resolve("linked/g" + i), randomBytes(random, random.nextInt(10000)));
+            final List<Path> group = new ArrayList<>(List.of(file));
+            for (int j = random.nextInt(3); j >= 0; --j) {
+                final var link = Files.createDirectories(dir.resolve("links" + j)).resolve("g" + i);
+                group.add(Files.createLink(link, file));
+            }
+            groups.add(group);
+        }
+        final var roots = strings(dir);
+        final List<String> expected = new ArrayList<>(walk(roots));
+        expected.remove(expected.size() - 1);
+        final var lines = expected.stream()
+                .collect(Collectors.toMap(line -> line.substring(line.indexOf(' ') + 1), line -> line));
+        groups.stream()
+                .map(group -> group.stream().map(Path::toString).sorted().collect(Collectors.toList()))
+                .sorted((a, b) -> a.get(0).compareTo(b.get(0)))
+                .forEach(group -> {
+                    expected.add("");
+                    group.forEach(file -> expected.add(lines.get(file)));
+                });
+        expected.add("");
+        for (final var options : WALKERS) {
+            assertEquals(String.join(" ", options), expected, walk(roots, withLinks(options)));
+        }
+        assertEquals(temporary, countTemporaryFiles());
+    }
+
+    @Test
+    public void testHashedOnce() throws IOException {
+        final var file = write(newDir("tree").resolve("a"), "content");
+        final var links = List.of(file, Files.createLink(file.resolveSibling("b"), file),
+                Files.createLink(file.resolveSibling("c"), file));
+        final var hashed = new AtomicInteger();
+        try (final var hasher = new LinkHasher((path, attrs) -> hashed.incrementAndGet())) {
+            for (final var link : links) {
+                assertEquals(1, hasher.hash(link, FileTree.UNIX.readAttributes(link)));
+            }
+        }
+        assertEquals(1, hashed.get());
+    }
+
+    @Test
+    public void testManyInodes() throws IOException, InterruptedException {
+        final var dir = newDir("tree");
+        final List<Path> links = new ArrayList<>();
+        for (int i = 0; i < 1500; ++i) {
+            final var file = write(dir.resolve("f" + i), Integer.toString(i));
+            links.add(file);
+            links.add(Files.createLink(dir.resolve("l" + i), file));
+        }
+        final var hashed = new AtomicInteger();
+        final var failed = new AtomicInteger();
+        try (final var hasher = new LinkHasher((path, attrs) -> {
+            hashed.incrementAndGet();
+            return Long.parseLong(Files.readString(path));
+        })) {
+            final List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                final int first = t;
+                threads.add(new Thread(() -> {
+                    for (int i = first; i < links.size(); i += 4) {
+                        try {
+                            final var link = links.get(i);
+                            if (hasher.hash(link, FileTree.UNIX.readAttributes(link)) != i / 2) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (final IOException ex) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (final var thread : threads) {
+                thread.start();
+            }
+            for (final var thread : threads) {
+                thread.join();
+            }
+        }
+        assertEquals(0, failed.get());
+        assertEquals(1500, hashed.get());
+    }
+
+}
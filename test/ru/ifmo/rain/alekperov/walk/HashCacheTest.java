@@ -0,0 +1,198 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HashCacheTest extends WalkTestBase {
+
+    private static final FileTime PAST = FileTime.fromMillis(946684800000L);
+
+    private Path cacheFile;
+
+    @Before
+    public void setUp() {
+        cacheFile = folder.getRoot().toPath().resolve("cache.bin");
+    }
+
+    private static Path createOldTree(final Path root) throws IOException {
+        createTree(root, new Random(SEED), 2);
+        Files.walk(root).filter(Files::isRegularFile).forEach(file -> {
+            try {
+                Files.setLastModifiedTime(file, PAST);
+            } catch (final IOException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        return root;
+    }
+
+    /**
+     * Changes the contents of the file, but not its size and modification time.
+     */
+    private static void tamper(final Path file) throws IOException {
+        final var modified = Files.getLastModifiedTime(file);
+        final var bytes = Files.readAllBytes(file);
+        bytes[0] ^= 1;
+        Files.write(file, bytes);
+        Files.setLastModifiedTime(file, modified);
+    }
+
+    private static Path firstFile(final Path root, final Path other) throws IOException {
+        try (final var files = Files.walk(root)) {
+            return files.filter(file -> Files.isRegularFile(file) && file.toFile().length() > 0 && !file.equals(other))
+                    .findFirst().orElseThrow();
+        }
+    }
+
+    private static Path firstFile(final Path root) throws IOException {
+        return firstFile(root, null);
+    }
+
+    @Test
+    public void testSameManifest() throws IOException {
+        final var roots = strings(createOldTree(newDir("tree")));
+        final var expected = walk(roots);
+        assertEquals(expected, walk(roots, "--cache", cacheFile.toString()));
+        assertEquals(expected, walk(roots, "--cache", cacheFile.toString()));
+        assertEquals(expected, walk(roots, "--cache", cacheFile.toString(), "--threads", "3"));
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotRead() throws IOException {
+        final var root = createOldTree(newDir("tree"));
+        final var roots = strings(root);
+        final var expected = walk(roots, "--cache", cacheFile.toString());
+        tamper(firstFile(root));
+        assertEquals(expected, walk(roots, "--cache", cacheFile.toString()));
+        // The Unix attributes read for hard links give the same devices and inode numbers as the file keys
+        assertEquals(expected, walk(roots, "--cache", cacheFile.toString(), "--hard-links"));
+        assertNotEquals(expected, walk(roots));
+    }
+
+    @Test
+    public void testRecentFilesAreRehashed() throws IOException {
+        final var root = newDir("tree");
+        final var file = write(root.resolve("recent"), "recent contents");
+        final var roots = strings(root);
+        walk(roots, "--cache", cacheFile.toString());
+        tamper(file);
+        assertEquals(walk(roots), walk(roots, "--cache", cacheFile.toString()));
+    }
+
+    @Test
+    public void testChangedLinkTargetsAreRehashed() throws IOException {
+        final var root = newDir("tree");
+        final var target = write(folder.getRoot().toPath().resolve("target"), "target contents");
+        Files.setLastModifiedTime(target, PAST);
+        final var link = root.resolve("link");
+        try {
+            Files.createSymbolicLink(link, target);
+        } catch (final UnsupportedOperationException ex) {
+            Assume.assumeNoException(ex);
+        }
+        // An old link would be cached if its own attributes were checked
+        Files.getFileAttributeView(link, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+                .setTimes(PAST, null, null);
+        final var roots = strings(root);
+        assertEquals(walk(roots), walk(roots, "--cache", cacheFile.toString()));
+        write(target, "changed contents");
+        Files.setLastModifiedTime(target, PAST);
+        final var expected = walk(roots);
+        assertEquals(expected, walk(roots, "--cache", cacheFile.toString()));
+    }
+
+    @Test
+    public void testFailedWalkKeepsCache() throws IOException {
+        walk(strings(createOldTree(newDir("tree"))), "--cache", cacheFile.toString());
+        final var saved = Files.readAllBytes(cacheFile);
+        run("--cache", cacheFile.toString(), folder.getRoot().toPath().resolve("missing").toString(),
+                folder.getRoot().toPath().resolve("output").toString());
+        assertArrayEquals(saved, Files.readAllBytes(cacheFile));
+    }
+
+    @Test
+    public void testOtherTreesAreKept() throws IOException {
+        final var first = createOldTree(newDir("first"));
+        final var second = createOldTree(newDir("second"));
+        final var expected = walk(strings(first), "--cache", cacheFile.toString());
+        walk(strings(second), "--cache", cacheFile.toString());
+        tamper(firstFile(first));
+        assertEquals(expected, walk(strings(first), "--cache", cacheFile.toString()));
+    }
+
+    @Test
+    public void testUnvisitedFilesAreNotChecked() throws IOException {
+        final var first = createOldTree(newDir("first"));
+        final var second = createOldTree(newDir("second"));
+        final var file = write(second.resolve("a long directory name").resolve("a long file name"), "long");
+        write(second.resolve("a long directory name").resolve("a long file name too"), "longer");
+        Files.setLastModifiedTime(file, PAST);
+        final var expected = walk(strings(second), "--cache", cacheFile.toString());
+        walk(strings(first), "--cache", cacheFile.toString());
+        // Moving the tree away and back keeps the metadata of its files, but the save cannot see them
+        final var moved = folder.getRoot().toPath().resolve("moved");
+        Files.move(second, moved);
+        walk(strings(first), "--cache", cacheFile.toString());
+        Files.move(moved, second);
+        tamper(file);
+        tamper(firstFile(second));
+        assertEquals(expected, walk(strings(second), "--cache", cacheFile.toString()));
+    }
+
+    @Test
+    public void testChangedFilesMiss() throws IOException {
+        final var first = createOldTree(newDir("first"));
+        final var second = createOldTree(newDir("second"));
+        walk(strings(first, second), "--cache", cacheFile.toString());
+        final var deleted = firstFile(first);
+        Files.delete(deleted);
+        final var changed = firstFile(second);
+        Files.write(changed, new byte[]{1});
+        Files.setLastModifiedTime(changed, PAST);
+        walk(List.of(), "--cache", cacheFile.toString());
+
+        final var misses = new AtomicInteger();
+        final var cache = HashCache.load(cacheFile, "fnv32", (file, attrs) -> {
+            misses.incrementAndGet();
+            return 0;
+        });
+        for (final var file : List.of(deleted, changed)) {
+            write(file, new byte[]{2});
+            Files.setLastModifiedTime(file, PAST);
+            cache.hash(file, Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        }
+        assertEquals(2, misses.get());
+        final var unchanged = firstFile(second, changed);
+        cache.hash(unchanged, Files.readAttributes(unchanged, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        assertEquals(2, misses.get());
+    }
+
+    @Test
+    public void testPermissionsAreKept() throws IOException {
+        final var roots = strings(createOldTree(newDir("tree")));
+        walk(roots, "--cache", cacheFile.toString());
+        try {
+            Files.setPosixFilePermissions(cacheFile, PosixFilePermissions.fromString("rw-r--r--"));
+        } catch (final UnsupportedOperationException ex) {
+            Assume.assumeNoException(ex);
+        }
+        walk(roots, "--cache", cacheFile.toString());
+        assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheFile)));
+    }
+
+}
@@ -0,0 +1,156 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HashFunctionTest extends WalkTestBase {
+
+    /**
+     * A function registered as a service by {@link #testServices}: the sum of the bytes.
+     */
+    public static class Sum implements HashFunction, Checksum {
+        private long sum;
+
+        @Override
+        public String getName() {
+            return "sum";
+        }
+
+        @Override
+        public int getBits() {
+            return 16;
+        }
+
+        @Override
+        public Checksum newChecksum() {
+            return new Sum();
+        }
+
+        @Override
+        public void update(final int b) {
+            sum = sum + (b & 0xff) & 0xffff;
+        }
+
+        @Override
+        public void update(final byte[] b, final int off, final int len) {
+            for (int i = off; i < off + len; ++i) {
+                update(b[i]);
+            }
+        }
+
+        @Override
+        public long getValue() {
+            return sum;
+        }
+
+        @Override
+        public void reset() {
+            sum = 0;
+        }
+    }
+
+    private static byte[] ascii(final String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns all byte values four times, a kilobyte which spans several stripes of xxHash.
+     */
+    private static byte[] kilobyte() {
+        final var bytes = new byte[1024];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks the hash of the input fed at once, split in two at every point, and through heap and direct buffers.
+     */
+    private static void assertHash(final String name, final long expected, final byte[] input) {
+        final var function = HashFunction.forName(name);
+        for (int split = 0; split <= input.length; ++split) {
+            final var checksum = function.newChecksum();
+            checksum.update(input, 0, split);
+            checksum.update(input, split, input.length - split);
+            assertEquals(name + " split at " + split, expected, checksum.getValue());
+        }
+        final var direct = ByteBuffer.allocateDirect(input.length + 3);
+        direct.position(3);
+        direct.put(input).position(3);
+        for (final var buffer : new ByteBuffer[]{ByteBuffer.wrap(input), direct}) {
+            final var checksum = function.newChecksum();
+            checksum.update(buffer);
+            assertEquals(name + (buffer.isDirect() ? " direct" : " heap"), expected, checksum.getValue());
+        }
+        final var checksum = function.newChecksum();
+        checksum.update(ascii("garbage"), 0, 7);
+        checksum.reset();
+        checksum.update(input, 0, input.length);
+        assertEquals(name + " after reset", expected, checksum.getValue());
+    }
+
+    @Test
+    public void testXxHash64() {
+        assertHash("xxh64", 0xef46db3751d8e999L, new byte[0]);
+        assertHash("xxh64", 0xd24ec4f1a98c6e5bL, ascii("a"));
+        assertHash("xxh64", 0x44bc2cf5ad770999L, ascii("abc"));
+        assertHash("xxh64", 0xfbcea83c8a378bf1L, ascii("Nobody inspects the spammish repetition"));
+        assertHash("xxh64", 0x6f3914f18fe4df57L, kilobyte());
+    }
+
+    @Test
+    public void testCrc32c() {
+        assertHash("crc32c", 0, new byte[0]);
+        assertHash("crc32c", 0xe3069283L, ascii("123456789"));
+        assertHash("crc32c", 0x8a9136aaL, new byte[32]);
+    }
+
+    @Test
+    public void testStandardFunctions() {
+        for (final var function : StandardHashFunction.values()) {
+            assertSame(function, HashFunction.forName(function.getName()));
+        }
+        assertEquals(32, HashFunction.forName("fnv32").getBits());
+        assertEquals(64, HashFunction.forName("fnv1a64").getBits());
+        assertEquals(32, HashFunction.forName("crc32c").getBits());
+        assertEquals(64, HashFunction.forName("xxh64").getBits());
+        try {
+            HashFunction.forName("md5");
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException ignored) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testServices() throws IOException {
+        final var root = newDir("services");
+        write(root.resolve("META-INF/services/" + HashFunction.class.getName()), Sum.class.getName() + "\n");
+        final var thread = Thread.currentThread();
+        final var loader = thread.getContextClassLoader();
+        try (final var services = new URLClassLoader(new URL[]{root.toUri().toURL()}, getClass().getClassLoader())) {
+            thread.setContextClassLoader(services);
+            final var function = HashFunction.forName("sum");
+            assertEquals(16, function.getBits());
+            assertHash("sum", 'a' + 'b' + 'c', ascii("abc"));
+
+            final var file = write(newDir("tree").resolve("file"), "abc");
+            final var manifest = walk(strings(file), "--hash", "sum");
+            assertEquals(String.format("%04x %s", 'a' + 'b' + 'c', file), manifest.get(0));
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+    }
+
+}
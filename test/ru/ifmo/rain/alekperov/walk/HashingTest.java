@@ -0,0 +1,69 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class HashingTest extends WalkTestBase {
+
+    /**
+     * Writes all byte values 4097 times, a file of 1 MiB and 256 bytes, large enough to be memory-mapped.
+     */
+    private Path createLargeFile() throws IOException {
+        final var bytes = new byte[256 * 4097];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) i;
+        }
+        return write(folder.getRoot().toPath().resolve("large.bin"), bytes);
+    }
+
+    @Test
+    public void testMappedFiles() throws IOException {
+        final var file = createLargeFile();
+        try (final var channel = FileChannel.open(file)) {
+            assertEquals(0xccc881c5L, Hashing.hash(channel, new FNV.Hash32()));
+        }
+        try (final var channel = FileChannel.open(file)) {
+            // The rest of the file after the position is still mapped
+            channel.position(5);
+            assertEquals(0x42bf9df7L, Hashing.hash(channel, new FNV.Hash32()));
+            assertEquals(Files.size(file), channel.position());
+        }
+        try (final InputStream is = Files.newInputStream(file)) {
+            assertEquals(0xccc881c5L, Hashing.hash(is, new FNV.Hash32()));
+        }
+    }
+
+    @Test
+    public void testBufferSizes() throws IOException {
+        final var file = createLargeFile();
+        final var bytes = Files.readAllBytes(file);
+        // Less than a mebibyte is left after the position, so it is read into the buffer rather than mapped
+        final int position = bytes.length - (1 << 20) + 1;
+        for (final var function : StandardHashFunction.values()) {
+            final var checksum = function.newChecksum();
+            checksum.update(bytes, 0, bytes.length);
+            final long expected = checksum.getValue();
+            final var tail = function.newChecksum();
+            tail.update(bytes, position, bytes.length - position);
+            for (final int bufferSize : new int[]{13, 4096}) {
+                try (final var channel = FileChannel.open(file)) {
+                    channel.position(position);
+                    assertEquals(function.getName(), tail.getValue(),
+                            Hashing.hash(channel, function.newChecksum(), bufferSize));
+                }
+                try (final var channel = FileChannel.open(file)) {
+                    assertEquals(function.getName(), expected,
+                            Hashing.hash(channel, function.newChecksum(), bufferSize));
+                }
+            }
+        }
+    }
+
+}
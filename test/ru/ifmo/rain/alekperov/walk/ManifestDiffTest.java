@@ -0,0 +1,141 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class ManifestDiffTest extends WalkTestBase {
+
+    private static Map<String, Long> entries(final Random random, final int count) {
+        final Map<String, Long> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            entries.put("/data/" + Integer.toString(random.nextInt(count * 2), 36) + "/file", random.nextLong() >>> 32);
+        }
+        return entries;
+    }
+
+    private Path write(final Map<String, Long> entries, final boolean binary, final String name) throws IOException {
+        final var file = folder.getRoot().toPath().resolve(name);
+        try (final ManifestOutput writer = binary ? new BinaryManifestWriter(file, 32) : new ManifestWriter(file, 32)) {
+            for (final var e : entries.entrySet()) {
+                writer.write(e.getValue(), e.getKey());
+            }
+        }
+        return file;
+    }
+
+    private static List<String> expected(final Map<String, Long> previous, final Map<String, Long> current) {
+        final List<String> lines = new ArrayList<>();
+        current.forEach((file, hash) -> {
+            final var old = previous.get(file);
+            if (old == null) {
+                lines.add(String.format("+ %08x %s", hash, file));
+            } else if (!old.equals(hash)) {
+                lines.add(String.format("~ %08x %s", hash, file));
+            }
+        });
+        previous.forEach((file, hash) -> {
+            if (!current.containsKey(file)) {
+                lines.add(String.format("- %08x %s", hash, file));
+            }
+        });
+        lines.sort(null);
+        return lines;
+    }
+
+    private static long countPartitions() throws IOException {
+        try (final var files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("walk-diff")).count();
+        }
+    }
+
+    private void assertDiff(final int count, final boolean binary, final String... options) throws IOException {
+        assertDiff(count, count / 10, binary, false, options);
+    }
+
+    private void assertDiff(final int count, final boolean binary, final boolean sorted, final String... options)
+            throws IOException {
+        assertDiff(count, count / 10, binary, sorted, options);
+    }
+
+    private void assertDiff(final int count, final int added, final boolean binary, final boolean sorted,
+                            final String... options) throws IOException {
+        final var random = new Random(SEED);
+        final Map<String, Long> previous = sorted ? new TreeMap<>(entries(random, count)) : entries(random, count);
+        final Map<String, Long> current = sorted ? new TreeMap<>() : new LinkedHashMap<>();
+        for (final var e : previous.entrySet()) {
+            final int kind = random.nextInt(10);
+            if (kind > 1) {
+                current.put(e.getKey(), kind == 2 ? e.getValue() ^ 1 : e.getValue());
+            }
+        }
+        current.putAll(entries(random, added));
+
+        final long partitions = countPartitions();
+        final var report = folder.getRoot().toPath().resolve("report");
+        final List<String> args = new ArrayList<>(List.of(options));
+        args.add(write(previous, binary, "old").toString());
+        args.add(write(current, binary, "new").toString());
+        args.add(report.toString());
+        final var out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            ManifestDiff.main(args.toArray(String[]::new));
+        } finally {
+            System.setOut(out);
+        }
+
+        final var lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+        lines.sort(null);
+        final var expected = expected(previous, current);
+        assertEquals(expected, lines);
+        assertEquals(partitions, countPartitions());
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        assertDiff(10000, false);
+        assertDiff(10000, true);
+    }
+
+    @Test
+    public void testPartitioned() throws IOException {
+        assertDiff(20000, false, "--memory", "1m", "--threads", "3");
+        assertDiff(20000, true, "--memory", "1m");
+    }
+
+    @Test
+    public void testRecursivelyPartitioned() throws IOException {
+        // Only two partitions fit into the budget at once, so they are split again
+        assertDiff(20000, false, "--memory", "100k", "--threads", "2");
+        assertDiff(30000, false, "--memory", "20k", "--threads", "1");
+    }
+
+    @Test
+    public void testMostlyAdded() throws IOException {
+        // The new paths are kept in memory too, so the old manifest alone would fit but the diff is partitioned
+        assertDiff(1000, 30000, false, false, "--memory", "100k", "--threads", "2");
+        assertDiff(1000, 30000, true, false, "--memory", "100k");
+    }
+
+    @Test
+    public void testSorted() throws IOException {
+        assertDiff(20000, false, true);
+        assertDiff(20000, true, true, "--memory", "20k");
+    }
+
+}
@@ -0,0 +1,186 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ManifestFormatsTest extends WalkTestBase {
+
+    /**
+     * Paths with the characters which line-based or UTF-8 handling could mangle.
+     */
+    private static final List<String> ODD_PATHS = List.of(
+            "carriage\rreturn",
+            "trailing return\r",
+            "\rleading return",
+            "tab\tand  spaces ",
+            " leading space",
+            "caf\u00e9/\u0444\u0430\u0439\u043b",
+            "emoji \ud83d\ude00",
+            "back\\slash",
+            "0123456789abcdef not a hash"
+    );
+
+    /**
+     * Returns the records to write, {@code null} standing for empty lines: the odd paths, runs of paths
+     * sharing long prefixes across block boundaries, a path longer than the write buffers, and empty lines.
+     */
+    private static List<String> records(final Random random, final boolean breaks) {
+        final List<String> records = new ArrayList<>(ODD_PATHS);
+        for (int i = 0; i < 300; ++i) {
+            records.add("dir/" + "sub/".repeat(i % 7) + "file" + random.nextInt(1000));
+            if (breaks && i % 50 == 0) {
+                records.add(null);
+            }
+        }
+        records.add("long/" + "x".repeat(100_000));
+        if (breaks) {
+            records.add(null);
+            records.add(null);
+        }
+        return records;
+    }
+
+    private static long[] hashes(final Random random, final int count, final int bits) {
+        return random.longs(count).map(hash -> bits == 64 ? hash : hash & (1L << bits) - 1).toArray();
+    }
+
+    private static void write(final ManifestOutput output, final List<String> records, final long[] hashes)
+            throws IOException {
+        try (output) {
+            for (int i = 0; i < records.size(); ++i) {
+                if (records.get(i) == null) {
+                    output.newLine();
+                } else {
+                    output.write(hashes[i], records.get(i));
+                }
+            }
+        }
+    }
+
+    private static void assertRecords(final ManifestReader reader, final List<String> records, final long[] hashes,
+                                      final int bits) throws IOException {
+        try (reader) {
+            assertEquals((bits + 3) / 4, reader.getDigits());
+            for (int i = 0; i < records.size(); ++i) {
+                final var entry = reader.next();
+                if (records.get(i) == null) {
+                    assertTrue("record " + i, entry.isBreak());
+                } else {
+                    assertEquals("record " + i, records.get(i), entry.file);
+                    assertEquals("record " + i, hashes[i], entry.hash);
+                }
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        final var random = new Random(SEED);
+        for (final int bits : new int[]{32, 64}) {
+            for (final boolean breaks : new boolean[]{false, true}) {
+                final var records = records(random, breaks);
+                final var hashes = hashes(random, records.size(), bits);
+                final var file = folder.newFile().toPath();
+                write(new BinaryManifestWriter(file, bits), records, hashes);
+                assertRecords(new BinaryManifestReader(file), records, hashes, bits);
+                assertRecords(ManifestReader.open(file), records, hashes, bits);
+                try (final var reader = new BinaryManifestReader(file)) {
+                    assertFalse(reader.isSorted());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSortedFlag() throws IOException {
+        final var random = new Random(SEED);
+        final var records = records(random, false);
+        records.sort(null);
+        final var hashes = hashes(random, records.size(), 64);
+        final var file = folder.newFile().toPath();
+        write(new BinaryManifestWriter(file, 64), records, hashes);
+        try (final var reader = new BinaryManifestReader(file)) {
+            assertTrue(reader.isSorted());
+            for (int i = 0; i < records.size(); i += 37) {
+                assertEquals(hashes[i], reader.find(records.get(i)).hash);
+            }
+        }
+    }
+
+    @Test
+    public void testTextRoundTrip() throws IOException {
+        final var random = new Random(SEED);
+        for (final int bits : new int[]{32, 64}) {
+            final var records = records(random, true);
+            final var hashes = hashes(random, records.size(), bits);
+            final var file = folder.newFile().toPath();
+            write(new ManifestWriter(file, bits), records, hashes);
+            assertRecords(new TextManifestReader(file), records, hashes, bits);
+        }
+    }
+
+    @Test
+    public void testConverter() throws IOException {
+        final var random = new Random(SEED);
+        for (final int bits : new int[]{32, 64}) {
+            final var records = records(random, true);
+            final var hashes = hashes(random, records.size(), bits);
+            final var text = folder.newFile().toPath();
+            write(new ManifestWriter(text, bits), records, hashes);
+            final Path binary = folder.newFile().toPath();
+            final Path back = folder.newFile().toPath();
+            ManifestConverter.main(new String[]{"to-binary", text.toString(), binary.toString()});
+            assertRecords(new BinaryManifestReader(binary), records, hashes, bits);
+            ManifestConverter.main(new String[]{"to-text", binary.toString(), back.toString()});
+            assertArrayEquals(Files.readAllBytes(text), Files.readAllBytes(back));
+        }
+    }
+
+    @Test
+    public void testVarints() throws IOException {
+        final var random = new Random(SEED);
+        final List<Integer> values = new ArrayList<>(List.of(0, 1, 0x7f, 0x80, 0x3fff, 0x4000, 0x1fffff, 0x200000,
+                0xfffffff, 0x10000000, Integer.MAX_VALUE));
+        random.ints(1000, 0, Integer.MAX_VALUE).forEach(values::add);
+        final var bytes = new byte[5 * values.size()];
+        int size = 0;
+        final var stream = new ByteArrayOutputStream();
+        final var out = new DataOutputStream(stream);
+        for (final int value : values) {
+            final int start = size;
+            size = Varints.put(bytes, size, value);
+            final int length = 32 - Integer.numberOfLeadingZeros(value);
+            assertEquals(value + " length", Math.max(1, (length + 6) / 7), size - start);
+            Varints.write(out, value);
+        }
+        assertArrayEquals(Arrays.copyOf(bytes, size), stream.toByteArray());
+        final var buffer = ByteBuffer.wrap(bytes, 0, size);
+        final var in = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        for (final int value : values) {
+            assertEquals(value, Varints.get(buffer));
+            assertEquals(value, Varints.read(in));
+        }
+        assertFalse(buffer.hasRemaining());
+        assertEquals(-1, in.read());
+    }
+
+}
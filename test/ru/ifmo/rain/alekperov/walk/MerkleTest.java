@@ -0,0 +1,86 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class MerkleTest extends WalkTestBase {
+
+    /**
+     * Creates {@code a.txt} containing {@code hello}, {@code sub/b.txt} containing {@code world}
+     * and the empty directory {@code sub/empty}.
+     */
+    private static Path createFixedTree(final Path root) throws IOException {
+        write(root.resolve("a.txt"), "hello");
+        write(root.resolve("sub").resolve("b.txt"), "world");
+        Files.createDirectories(root.resolve("sub").resolve("empty"));
+        return root;
+    }
+
+    /**
+     * Returns the digest section of the manifest, the lines after the empty one.
+     */
+    private static List<String> digests(final List<String> manifest) {
+        final var start = manifest.indexOf("");
+        return new ArrayList<>(manifest.subList(start + 1, manifest.size() - 1));
+    }
+
+    /**
+     * Returns the digests by the paths of the directories relative to the root.
+     */
+    private Map<String, String> relativeDigests(final Path root, final String... options) throws IOException {
+        final Map<String, String> result = new HashMap<>();
+        for (final var line : digests(walk(strings(root), options))) {
+            final var path = Path.of(line.substring(line.indexOf(' ') + 1));
+            result.put(root.relativize(path).toString(), line.substring(0, line.indexOf(' ')));
+        }
+        return result;
+    }
+
+    @Test
+    public void testKnownDigests() throws IOException {
+        final var root = createFixedTree(newDir("tree"));
+        final var manifest = walk(strings(root), "--merkle");
+        final var files = manifest.subList(0, manifest.indexOf(""));
+        assertEquals(Set.of("b6fa7167 " + root.resolve("a.txt"), "9b8e862f " + root.resolve("sub").resolve("b.txt")),
+                Set.copyOf(files));
+        // Every digest hashes the sorted names of the children, each followed by a zero byte and its big-endian hash
+        assertEquals(List.of(
+                "811c9dc5 " + root.resolve("sub").resolve("empty"),
+                "95524b67 " + root.resolve("sub"),
+                "95748401 " + root
+        ), digests(manifest));
+    }
+
+    @Test
+    public void testReplicas() throws IOException {
+        final var expected = relativeDigests(createFixedTree(newDir("tree")), "--merkle");
+        final var replica = createFixedTree(newDir("replica"));
+        assertEquals(expected, relativeDigests(replica, "--merkle"));
+        assertEquals(expected, relativeDigests(replica, "--merkle", "--threads", "3"));
+
+        write(replica.resolve("sub").resolve("b.txt"), "world!");
+        final var changed = relativeDigests(replica, "--merkle");
+        final var empty = Path.of("sub", "empty").toString();
+        assertEquals(expected.get(empty), changed.get(empty));
+        assertNotEquals(expected.get("sub"), changed.get("sub"));
+        assertNotEquals(expected.get(""), changed.get(""));
+
+        write(replica.resolve("sub").resolve("b.txt"), "world");
+        Files.move(replica.resolve("a.txt"), replica.resolve("c.txt"));
+        final var renamed = relativeDigests(replica, "--merkle");
+        assertEquals(expected.get("sub"), renamed.get("sub"));
+        assertNotEquals(expected.get(""), renamed.get(""));
+    }
+
+}
@@ -0,0 +1,108 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PipelinedHasherTest extends WalkTestBase {
+
+    private static final FileHasher SEQUENTIAL = FileHasher.of(StandardHashFunction.FNV_32);
+
+    /**
+     * Creates a tree of many files smaller than a chunk, with a few larger ones among them.
+     */
+    private static Path createSmallFiles(final Path root, final Random random) throws IOException {
+        for (int i = 0; i < 300; ++i) {
+            final int size = i % 50 == 0 ? (1 << 18) * 3 + random.nextInt(1000) : random.nextInt(3000);
+            write(root.resolve("d" + i % 7).resolve("f" + i), randomBytes(random, size));
+        }
+        return root;
+    }
+
+    @Test
+    public void testSameAsSequential() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("tree");
+        createSmallFiles(dir.resolve("small"), random);
+        createTree(dir.resolve("random"), random, 3);
+        final var roots = strings(dir);
+        final var expected = walk(roots);
+        for (final var depth : List.of("1", "2", "16", dir.resolve("small") + "=3")) {
+            assertEquals(depth, expected, walk(roots, "--readahead", depth));
+        }
+        assertEquals(expected, walk(roots, "--readahead", "4", "--threads", "3"));
+        assertEquals(walk(roots, "--exclude", "**/f1*"), walk(roots, "--readahead", "4", "--exclude", "**/f1*"));
+    }
+
+    @Test
+    public void testSkippedFiles() throws IOException {
+        final var dir = createSmallFiles(newDir("tree"), new Random(SEED));
+        final var roots = strings(dir);
+        final var cache = folder.getRoot().toPath().resolve("cache.bin").toString();
+        final var expected = walk(roots);
+        // The second walk finds the hashes in the cache, so the files read ahead are not hashed
+        assertEquals(expected, walk(roots, "--readahead", "4", "--cache", cache));
+        assertEquals(expected, walk(roots, "--readahead", "4", "--cache", cache));
+    }
+
+    @Test
+    public void testReadAheadIsBounded() throws IOException {
+        final var random = new Random(SEED);
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            files.add(write(folder.getRoot().toPath().resolve("f" + i), randomBytes(random, 1000 * i)));
+        }
+        final var hasher = new PipelinedHasher(StandardHashFunction.FNV_32, 3, Map.of(), 1);
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(hasher.readAhead(files.get(i)));
+        }
+        assertFalse(hasher.readAhead(files.get(3)));
+        assertEquals(SEQUENTIAL.hash(files.get(0), null), hasher.hash(files.get(0), null));
+        assertTrue(hasher.readAhead(files.get(3)));
+        // The second file is skipped, and a file which has not been read ahead keeps the rest
+        assertEquals(SEQUENTIAL.hash(files.get(2), null), hasher.hash(files.get(2), null));
+        assertEquals(SEQUENTIAL.hash(files.get(9), null), hasher.hash(files.get(9), null));
+        assertTrue(hasher.readAhead(files.get(4)));
+        assertTrue(hasher.readAhead(files.get(5)));
+        assertFalse(hasher.readAhead(files.get(6)));
+        assertEquals(SEQUENTIAL.hash(files.get(3), null), hasher.hash(files.get(3), null));
+        assertTrue(hasher.readAhead(files.get(6)));
+        assertFalse(hasher.readAhead(files.get(7)));
+        hasher.cancelReadAhead();
+        for (final var file : files) {
+            assertEquals(SEQUENTIAL.hash(file, null), hasher.hash(file, null));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testReadAheadGivesUpBuffers() throws IOException {
+        final var random = new Random(SEED);
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            files.add(write(folder.getRoot().toPath().resolve("f" + i), randomBytes(random, 1000 * i)));
+        }
+        final var hasher = new PipelinedHasher(StandardHashFunction.FNV_32, 3, Map.of(), 1);
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(hasher.readAhead(files.get(i)));
+        }
+        // The reads ahead hold all the buffers, so the last one is dropped for a file which has not been read ahead
+        assertEquals(SEQUENTIAL.hash(files.get(3), null), hasher.hash(files.get(3), null));
+        assertEquals(SEQUENTIAL.hash(files.get(0), null), hasher.hash(files.get(0), null));
+        assertTrue(hasher.readAhead(files.get(3)));
+        assertTrue(hasher.readAhead(files.get(2)));
+        assertFalse(hasher.readAhead(files.get(0)));
+        for (final var file : files.subList(1, 4)) {
+            assertEquals(SEQUENTIAL.hash(file, null), hasher.hash(file, null));
+        }
+    }
+
+}
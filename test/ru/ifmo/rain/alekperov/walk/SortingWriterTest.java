@@ -0,0 +1,95 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class SortingWriterTest extends WalkTestBase {
+
+    private static final class Collected implements ManifestOutput {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void write(final long hash, final String file) {
+            lines.add(hash + " " + file);
+        }
+
+        @Override
+        public void newLine() {
+            lines.add("");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static long countRuns() throws IOException {
+        try (final var files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("walk-run")).count();
+        }
+    }
+
+    private static List<String> sort(final long budget, final int count) throws IOException {
+        final var random = new Random(SEED);
+        final var output = new Collected();
+        try (final var writer = new SortingWriter(budget)) {
+            for (int i = 0; i < count; ++i) {
+                writer.write(random.nextInt(), "/root/" + Integer.toString(random.nextInt(1 << 20), 36) + "/" + i);
+            }
+            writer.writeTo(output);
+        }
+        return output.lines;
+    }
+
+    private static List<String> expected(final int count) {
+        final var random = new Random(SEED);
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            final int hash = random.nextInt();
+            lines.add(hash + " " + "/root/" + Integer.toString(random.nextInt(1 << 20), 36) + "/" + i);
+        }
+        lines.sort(Comparator.comparing(line -> line.substring(line.indexOf(' ') + 1)));
+        return lines;
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        assertEquals(expected(1000), sort(1L << 30, 1000));
+    }
+
+    @Test
+    public void testSingleMerge() throws IOException {
+        assertEquals(expected(20000), sort(1L << 20, 20000));
+    }
+
+    @Test
+    public void testMultiPassMerge() throws IOException {
+        final long before = countRuns();
+        // Every few entries make a run, and a pass merges two of them
+        assertEquals(expected(20000), sort(1000, 20000));
+        assertEquals(before, countRuns());
+    }
+
+    @Test
+    public void testWalk() throws IOException {
+        final var roots = strings(createTree(newDir("tree"), new Random(SEED), 3));
+        final var expected = walk(roots).stream().filter(line -> !line.isEmpty())
+                .sorted(Comparator.comparing(line -> line.substring(line.indexOf(' ') + 1)))
+                .collect(Collectors.toList());
+        expected.add("");
+        assertEquals(expected, walk(roots, "--sort", "1k"));
+        assertEquals(expected, walk(roots, "--sort", "1g"));
+        assertEquals(expected, walk(roots, "--sort", "1k", "--threads", "3"));
+    }
+
+}
@@ -0,0 +1,154 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TreeWatcherTest extends WalkTestBase {
+
+    private static final HashFunction FUNCTION = StandardHashFunction.FNV_32;
+    private static final FileHasher HASHER = FileHasher.of(FUNCTION);
+
+    private final AtomicInteger hashed = new AtomicInteger();
+    private Path output;
+    private ManifestWriter writer;
+    private TreeWatcher watcher;
+
+    @After
+    public void tearDown() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Creates a tree of two directories with two files each, watches it and writes its initial manifest.
+     */
+    private Path start() throws IOException {
+        final var root = newDir("tree");
+        for (final var dir : List.of(root, root.resolve("d"))) {
+            write(dir.resolve("a"), "a in " + dir);
+            write(dir.resolve("b"), "b in " + dir);
+        }
+        output = folder.getRoot().toPath().resolve("watch.txt");
+        writer = new ManifestWriter(output, FUNCTION.getBits());
+        watcher = new TreeWatcher((file, attrs) -> {
+            hashed.incrementAndGet();
+            return HASHER.hash(file, attrs);
+        }, writer);
+        watcher.register(root);
+        final var recording = watcher.recording(writer);
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                recording.write(HASHER.hash(file, attrs), file.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        writer.flush();
+        hashed.set(0);
+        return root;
+    }
+
+    private static String line(final char tag, final Path file) throws IOException {
+        final long hash = Files.exists(file) ? HASHER.hash(file, null) : 0;
+        return String.format("%c %08x %s", tag, hash, file);
+    }
+
+    private static String removed(final Path file, final String content) {
+        final var checksum = FUNCTION.newChecksum();
+        final var bytes = content.getBytes();
+        checksum.update(bytes, 0, bytes.length);
+        return String.format("- %08x %s", checksum.getValue(), file);
+    }
+
+    private List<String> changes() throws IOException {
+        final List<String> result = new ArrayList<>();
+        for (final var line : Files.readAllLines(output)) {
+            if (line.length() > 1 && line.charAt(1) == ' ') {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Makes one change of every kind and returns the lines which should be written for them.
+     */
+    private static Set<String> change(final Path root) throws IOException {
+        write(root.resolve("a"), "a changed in " + root);
+        Files.delete(root.resolve("b"));
+        write(root.resolve("c"), "new c");
+        write(root.resolve("e").resolve("f"), "new f");
+        final var dir = root.resolve("d");
+        Files.delete(dir.resolve("a"));
+        Files.delete(dir.resolve("b"));
+        Files.delete(dir);
+        return Set.of(
+                line('~', root.resolve("a")),
+                removed(root.resolve("b"), "b in " + root),
+                line('+', root.resolve("c")),
+                line('+', root.resolve("e").resolve("f")),
+                removed(dir.resolve("a"), "a in " + dir),
+                removed(dir.resolve("b"), "b in " + dir)
+        );
+    }
+
+    @Test
+    public void testChanges() throws IOException, InterruptedException {
+        final var root = start();
+        final var thread = new Thread(() -> {
+            try {
+                watcher.watch();
+            } catch (final IOException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        thread.start();
+        try {
+            final var expected = change(root);
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (!new HashSet<>(changes()).containsAll(expected) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(changes().toString(), new HashSet<>(changes()).containsAll(expected));
+        } finally {
+            watcher.close();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testOverflow() throws IOException {
+        final var root = start();
+        final var expected = change(root);
+        // Linux reports the overflow to every watched directory
+        for (final var dir : List.of(root, root.resolve("d"), root)) {
+            watcher.overflow(dir);
+        }
+        writer.flush();
+        final var changes = changes();
+        assertEquals(changes.toString(), expected.size(), changes.size());
+        assertEquals(expected, new HashSet<>(changes));
+        // Only the changed and the new files are hashed, once
+        assertEquals(3, hashed.get());
+    }
+
+}
@@ -0,0 +1,131 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VerifierTest extends WalkTestBase {
+
+    private static final FileHasher HASHER = FileHasher.of(StandardHashFunction.FNV_32);
+    /**
+     * More files than fit into two ranges of the verifier.
+     */
+    private static final int FILES = 600;
+
+    private final List<Path> files = new ArrayList<>();
+    private final List<Long> hashes = new ArrayList<>();
+
+    /**
+     * Creates the files and writes their manifest, followed by a section which should not be verified.
+     */
+    private Path createManifest() throws IOException {
+        final var random = new Random(SEED);
+        final var root = newDir("tree");
+        for (int i = 0; i < FILES; ++i) {
+            final var file = write(root.resolve("d" + i % 10).resolve("f" + i), randomBytes(random, random.nextInt(100)));
+            files.add(file);
+            hashes.add(HASHER.hash(file, null));
+        }
+        final var manifest = folder.getRoot().toPath().resolve("manifest.txt");
+        try (final var writer = new ManifestWriter(manifest, 32)) {
+            for (int i = 0; i < FILES; ++i) {
+                writer.write(hashes.get(i), files.get(i).toString());
+            }
+            writer.newLine();
+            writer.write(0, root.resolve("missing directory").toString());
+        }
+        return manifest;
+    }
+
+    private List<String> verify(final Path manifest, final String... options) throws IOException {
+        final var report = folder.getRoot().toPath().resolve("report.txt");
+        final List<String> args = new ArrayList<>(List.of("--verify"));
+        args.addAll(List.of(options));
+        args.add(manifest.toString());
+        args.add(report.toString());
+        run(args.toArray(String[]::new));
+        return Files.readAllLines(report, StandardCharsets.UTF_8);
+    }
+
+    private String line(final char tag, final long hash, final int index) {
+        return String.format("%c %08x %s", tag, hash, files.get(index));
+    }
+
+    @Test
+    public void testResults() throws IOException {
+        final var manifest = createManifest();
+        assertEquals(List.of(), verify(manifest));
+        assertTrue(printed, printed.contains(FILES + " files verified, 0 failed"));
+
+        write(files.get(10), "changed");
+        Files.delete(files.get(300));
+        // A directory in place of the file cannot be read
+        Files.delete(files.get(550));
+        Files.createDirectory(files.get(550));
+        final var expected = List.of(
+                line('~', HASHER.hash(files.get(10), null), 10),
+                line('-', hashes.get(300), 300),
+                line('!', hashes.get(550), 550)
+        );
+        assertEquals(expected, verify(manifest));
+        assertTrue(printed, printed.contains(FILES + " files verified, 3 failed\n"));
+        assertEquals(expected, verify(manifest, "--threads", "4"));
+    }
+
+    @Test
+    public void testLinks() throws IOException {
+        final var root = newDir("links");
+        final var target = write(root.resolve("target"), "target contents");
+        try {
+            Files.createSymbolicLink(root.resolve("file link"), target);
+        } catch (final UnsupportedOperationException ex) {
+            Assume.assumeNoException(ex);
+        }
+        Files.createSymbolicLink(root.resolve("directory link"), newDir("directory"));
+        Files.createSymbolicLink(root.resolve("dangling link"), root.resolve("missing"));
+        final var manifest = folder.getRoot().toPath().resolve("manifest.txt");
+        Files.write(manifest, walkBytes(strings(root)));
+        // The links are verified the way the walk has hashed them
+        assertEquals(List.of(), verify(manifest));
+        assertTrue(printed, printed.contains("4 files verified, 0 failed"));
+
+        write(target, "changed contents");
+        final var hash = String.format("%08x ", HASHER.hash(target, null));
+        assertEquals(List.of("~ " + hash + root.resolve("file link"), "~ " + hash + target),
+                verify(manifest).stream().sorted().toList());
+    }
+
+    @Test
+    public void testMaxFailures() throws IOException {
+        final var manifest = createManifest();
+        final List<String> deleted = new ArrayList<>();
+        for (int i = 5; i < FILES; i += 50) {
+            Files.delete(files.get(i));
+            deleted.add(line('-', hashes.get(i), i));
+        }
+        assertEquals(deleted.subList(0, 4), verify(manifest, "--max-failures", "4"));
+        assertTrue(printed, printed.contains(" files verified, 4 failed, the failure budget is exhausted"));
+
+        // Concurrent ranges may stop each other, so the first failures may be skipped, but the order is kept
+        final var report = verify(manifest, "--max-failures", "4", "--threads", "4");
+        assertEquals(4, report.size());
+        assertTrue(report.toString(), deleted.containsAll(report));
+        for (int i = 1; i < report.size(); ++i) {
+            assertTrue(report.toString(), deleted.indexOf(report.get(i - 1)) < deleted.indexOf(report.get(i)));
+        }
+
+        assertEquals(deleted, verify(manifest, "--max-failures", String.valueOf(deleted.size() + 1)));
+        assertTrue(printed, printed.contains(FILES + " files verified, " + deleted.size() + " failed\n"));
+    }
+
+}
@@ -0,0 +1,48 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counting the statistics must not change what is written.
+ */
+public class WalkStatsTest extends WalkTestBase {
+
+    private List<String> createRoots() throws IOException {
+        return strings(createTree(newDir("tree"), new Random(SEED), 2));
+    }
+
+    private void assertSameWithStats(final List<String> roots, final String... options) throws IOException {
+        final var expected = walk(roots, options);
+        final var args = new String[options.length + 1];
+        args[0] = "--stats";
+        System.arraycopy(options, 0, args, 1, options.length);
+        assertEquals(String.join(" ", args), expected, walk(roots, args));
+        assertTrue(printed, printed.contains(" files, "));
+    }
+
+    @Test
+    public void testModes() throws IOException {
+        final var roots = createRoots();
+        assertSameWithStats(roots);
+        assertSameWithStats(roots, "--threads", "4");
+        assertSameWithStats(roots, "--readahead", "2");
+        assertSameWithStats(roots, "--direct");
+        assertSameWithStats(roots, "--hard-links");
+        assertSameWithStats(roots, "--merkle", "--archives");
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        final var roots = createRoots();
+        assertSameWithStats(roots, "--chunks");
+        assertSameWithStats(roots, "--chunks", "--threads", "2");
+    }
+
+}
@@ -0,0 +1,117 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Temporary trees and whole {@link RecursiveWalk} runs over them.
+ * Contents depend only on the seed, so failures are reproducible.
+ */
+public abstract class WalkTestBase {
+
+    protected static final long SEED = 5735283495872345L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * What the last {@link #walk} printed.
+     */
+    protected String printed = "";
+
+    protected static byte[] randomBytes(final Random random, final int size) {
+        final var bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    protected static Path write(final Path file, final byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content);
+    }
+
+    protected static Path write(final Path file, final String content) throws IOException {
+        return write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a random tree with empty files, small files, a few files large enough to be memory-mapped,
+     * empty directories and files with equal contents.
+     */
+    protected static Path createTree(final Path root, final Random random, final int depth) throws IOException {
+        Files.createDirectories(root);
+        final var shared = randomBytes(random, 3000);
+        for (int i = random.nextInt(6); i >= 0; --i) {
+            final int kind = random.nextInt(20);
+            final byte[] content = kind == 0 ? new byte[0]
+                    : kind == 1 ? randomBytes(random, (1 << 20) + random.nextInt(1 << 16))
+                    : kind < 5 ? shared
+                    : randomBytes(random, random.nextInt(20000));
+            write(root.resolve("f" + i + (random.nextBoolean() ? ".txt" : ".bin")), content);
+        }
+        if (depth > 0) {
+            for (int i = random.nextInt(4); i > 0; --i) {
+                createTree(root.resolve("d" + i), random, depth - 1);
+            }
+        }
+        return root;
+    }
+
+    protected Path newDir(final String name) throws IOException {
+        return folder.newFolder(name).toPath();
+    }
+
+    /**
+     * Runs {@link RecursiveWalk} over the roots with the given options and returns the manifest.
+     */
+    protected byte[] walkBytes(final List<String> roots, final String... options) throws IOException {
+        final var dir = folder.getRoot().toPath();
+        final var input = Files.write(Files.createTempFile(dir, "input", ".txt"), roots, StandardCharsets.UTF_8);
+        final var output = dir.resolve("output-" + input.getFileName());
+        final var args = new ArrayList<>(Arrays.asList(options));
+        args.add(input.toString());
+        args.add(output.toString());
+        run(args.toArray(String[]::new));
+        return Files.exists(output) ? Files.readAllBytes(output) : null;
+    }
+
+    protected List<String> walk(final List<String> roots, final String... options) throws IOException {
+        final var bytes = walkBytes(roots, options);
+        return bytes == null ? null : Arrays.asList(new String(bytes, StandardCharsets.UTF_8).split("\n", -1));
+    }
+
+    /**
+     * Runs {@link RecursiveWalk} with the given arguments, keeping what it printed in {@link #printed}.
+     */
+    protected void run(final String... args) {
+        final var out = System.out;
+        final var buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            RecursiveWalk.main(args);
+        } finally {
+            System.setOut(out);
+            printed = buffer.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    protected static List<String> strings(final Path... paths) {
+        final List<String> result = new ArrayList<>();
+        for (final var path : paths) {
+            result.add(path.toString());
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,119 @@
+package ru.ifmo.rain.alekperov.walk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every walker must write exactly the manifest of the sequential walk.
+ */
+public class WalkersTest extends WalkTestBase {
+
+    private static final String[][] WALKERS = {
+            {"--threads", "1"},
+            {"--threads", "4"},
+            {"--per-device", "1"},
+            {"--per-device", "8"},
+            {"--inode-order"},
+    };
+
+    private void assertSameAsSequential(final List<String> roots, final String... options) throws IOException {
+        final var expected = walkBytes(roots, options);
+        assertNotNull(expected);
+        for (final var walker : WALKERS) {
+            final List<String> args = new ArrayList<>(List.of(walker));
+            args.addAll(List.of(options));
+            assertArrayEquals(String.join(" ", args), expected, walkBytes(roots, args.toArray(String[]::new)));
+        }
+    }
+
+    private List<String> createRoots() throws IOException {
+        final var random = new Random(SEED);
+        final var dir = newDir("roots");
+        final var tree = createTree(dir.resolve("tree"), random, 3);
+        final var file = write(dir.resolve("file"), randomBytes(random, 100));
+        return List.of(tree.toString(), file.toString(), dir.resolve("missing").toString(), "bad\0path",
+                tree.toString(), dir.toString());
+    }
+
+    @Test
+    public void testRandomTrees() throws IOException {
+        assertSameAsSequential(createRoots());
+    }
+
+    @Test
+    public void testHashFunctions() throws IOException {
+        final var roots = createRoots();
+        for (final var function : StandardHashFunction.values()) {
+            assertSameAsSequential(roots, "--hash", function.getName());
+        }
+    }
+
+    @Test
+    public void testFilters() throws IOException {
+        final var roots = createRoots();
+        assertSameAsSequential(roots, "--exclude", "d1");
+        assertSameAsSequential(roots, "--include", "*.txt");
+        assertSameAsSequential(roots, "--include", "tree/**", "--exclude", "regex:.*/d2/.*");
+    }
+
+    @Test
+    public void testManyFiles() throws IOException {
+        final var dir = newDir("many");
+        final var random = new Random(SEED);
+        for (int i = 0; i < 5000; ++i) {
+            write(dir.resolve("d" + i % 7).resolve("f" + i), randomBytes(random, random.nextInt(64)));
+        }
+        assertSameAsSequential(strings(dir));
+    }
+
+    @Test
+    public void testEmptyDirectory() throws IOException {
+        final Path dir = newDir("empty");
+        assertSameAsSequential(strings(dir));
+    }
+
+    @Test
+    public void testInodeOrderBatchesCountDirectories() throws IOException {
+        final var dir = newDir("directories");
+        for (int i = 0; i < 3000; ++i) {
+            write(dir.resolve("d" + i).resolve("f"), new byte[0]);
+        }
+        final var written = new AtomicInteger();
+        final var writtenBeforeHashing = new AtomicInteger();
+        final FileHasher hasher = (file, attrs) -> {
+            writtenBeforeHashing.accumulateAndGet(written.get(), Math::max);
+            return 0;
+        };
+        try (final var walker = new InodeOrderWalker(hasher, PathFilter.ALL, FileTree.BASIC)) {
+            walker.walk(dir, new HashWriter() {
+                @Override
+                public void write(final long hash, final String file) {
+                    written.incrementAndGet();
+                }
+
+                @Override
+                public void enterDirectory(final String dir) {
+                    written.incrementAndGet();
+                }
+
+                @Override
+                public void exitDirectory(final String dir) {
+                    written.incrementAndGet();
+                }
+            });
+        }
+        // There are fewer files than a batch, but the directories fill it
+        assertTrue(writtenBeforeHashing.get() > 0);
+    }
+
+}